@@ -0,0 +1,125 @@
+package bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Handles to the disassembler classes. They live in the unnamed package, which JMH benchmarks can't import,
+ * so they are looked up by name. Every handle is adapted to Object for disassembler types, so that
+ * benchmarks call them with invokeExact.
+ */
+final class Api {
+    static final Class<?> DECODED_TEXT = load("DecodedText");
+    static final Class<?> ELF_FILE = load("ElfFile");
+    static final Class<?> ELF_METADATA = load("ElfMetadata");
+    static final Class<?> ELF_SECTION_INFO = load("ElfSectionInfo");
+    static final Class<?> SYMBOL_INDEX = load("SymbolIndex");
+    static final Class<?> ELF_SYMTAB = load("ElfSymtab");
+    static final Class<?> COMMAND_BOUNDARIES = load("CommandBoundaries");
+
+    // (SymbolIndex symtab, int capacity) -> DecodedText
+    static final MethodHandle NEW_DECODED_TEXT = constructor(DECODED_TEXT, SYMBOL_INDEX, int.class);
+    // () -> SymbolIndex
+    static final MethodHandle NEW_SYMBOL_INDEX = constructor(SYMBOL_INDEX);
+    // (int data, long addr, DecodedText text) -> void
+    static final MethodHandle PARSE_UNCOMPRESSED = method("Disasm", "parseUncompressedCmd",
+            void.class, int.class, long.class, DECODED_TEXT);
+    static final MethodHandle PARSE_COMPRESSED = method("Disasm", "parseCompressedCmd",
+            void.class, int.class, long.class, DECODED_TEXT);
+    // (ByteBuffer file, ElfSectionInfo textHeader, SymbolIndex symtab) -> DecodedText
+    static final MethodHandle DISASM = method("Disasm", "disasm",
+            DECODED_TEXT, ByteBuffer.class, ELF_SECTION_INFO, SYMBOL_INDEX);
+    // (ByteBuffer file, ElfSectionInfo textHeader, SymbolIndex symtab, int threads) -> DecodedText
+    static final MethodHandle DISASM_THREADS = method("Disasm", "disasm",
+            DECODED_TEXT, ByteBuffer.class, ELF_SECTION_INFO, SYMBOL_INDEX, int.class);
+    // (ByteBuffer file, ElfSectionInfo textHeader, int from, int to, DecodedText text) -> int
+    static final MethodHandle DISASM_RANGE = method("Disasm", "disasmRange",
+            int.class, ByteBuffer.class, ELF_SECTION_INFO, int.class, int.class, DECODED_TEXT);
+    // (ByteBuffer file, ElfSectionInfo section, boolean vector) -> CommandBoundaries
+    static final MethodHandle SCAN_BOUNDARIES = method("CommandBoundaries", "scan",
+            COMMAND_BOUNDARIES, ByteBuffer.class, ELF_SECTION_INFO, boolean.class);
+    static final MethodHandle SECTION_OFFSET = getter(ELF_SECTION_INFO, "sh_offset", long.class);
+    static final MethodHandle SECTION_SIZE = getter(ELF_SECTION_INFO, "sh_size", long.class);
+
+    // (ByteBuffer data) -> ElfFile
+    static final MethodHandle PARSE_ELF = method("ElfFile", "parse", ELF_FILE, ByteBuffer.class);
+    static final MethodHandle ELF_HEADER = getter(ELF_FILE, "header", ELF_METADATA);
+    static final MethodHandle ELF_TEXT_HEADER = getter(ELF_FILE, "textHeader", ELF_SECTION_INFO);
+    static final MethodHandle ELF_SYMTAB_HEADER = getter(ELF_FILE, "symtabHeader", ELF_SECTION_INFO);
+    static final MethodHandle ELF_STRTAB_OFFSET = getter(ELF_FILE, "strtabOffset", int.class);
+    static final MethodHandle ELF_SYMTAB_FIELD = getter(ELF_FILE, "symtab", ELF_SYMTAB);
+    // (ElfSymtabEntry entry) -> String
+    static final MethodHandle ENTRY_NAME = getter(load("ElfSymtabEntry"), "name", String.class);
+    // (ByteBuffer file, ElfMetadata metadata) -> List<ElfSectionInfo>
+    static final MethodHandle PARSE_SECTION_HEADERS = method("ElfParser", "parseSectionHeaders",
+            List.class, ByteBuffer.class, ELF_METADATA);
+    // (ByteBuffer file, ElfSectionInfo symtabHeader, int strtabOffset) -> ElfSymtab
+    static final MethodHandle PARSE_SYMTAB = method("ElfParser", "parseSymtab",
+            ELF_SYMTAB, ByteBuffer.class, ELF_SECTION_INFO, int.class);
+
+    // (ElfSymtab symtab) -> SymbolIndex
+    static final MethodHandle SYMTAB_TO_INDEX = method("Utils", "symtabToIndex", SYMBOL_INDEX, ELF_SYMTAB);
+    // (DecodedText text) -> String
+    static final MethodHandle DISASM_TO_STRING = method("Utils", "disasmToString", String.class, DECODED_TEXT);
+    // (List symtab) -> String
+    static final MethodHandle SYMTAB_TO_STRING = method("Utils", "symtabToString", String.class, List.class);
+    // (StringBuilder res, long address, String symbol, String name) -> void
+    static final MethodHandle APPEND_HEADER = method("AsmCommand", "appendHeader",
+            void.class, StringBuilder.class, long.class, String.class, String.class);
+
+    private Api() {
+    }
+
+    private static Class<?> load(String name) {
+        try {
+            return Class.forName(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandles.Lookup lookup(Class<?> target) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(target, MethodHandles.lookup());
+    }
+
+    private static MethodHandle erase(MethodHandle handle) {
+        MethodType type = handle.type();
+        for (int i = 0; i < type.parameterCount(); i++) {
+            if (type.parameterType(i).getClassLoader() == Api.class.getClassLoader()) {
+                type = type.changeParameterType(i, Object.class);
+            }
+        }
+        if (type.returnType().getClassLoader() == Api.class.getClassLoader()) {
+            type = type.changeReturnType(Object.class);
+        }
+        return handle.asType(type);
+    }
+
+    private static MethodHandle method(String owner, String name, Class<?> returnType, Class<?>... parameters) {
+        Class<?> target = load(owner);
+        try {
+            return erase(lookup(target).findStatic(target, name, MethodType.methodType(returnType, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle constructor(Class<?> target, Class<?>... parameters) {
+        try {
+            return erase(lookup(target).findConstructor(target, MethodType.methodType(void.class, parameters)));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle getter(Class<?> target, String name, Class<?> type) {
+        try {
+            return erase(lookup(target).findGetter(target, name, type));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
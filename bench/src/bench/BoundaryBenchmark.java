@@ -0,0 +1,51 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Command boundaries of .text: the sequential loop stepping over commands by their length bits,
+ * and the two-pass scan of {@code CommandBoundaries} with the scalar and the Vector API mask.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class BoundaryBenchmark {
+    @Benchmark
+    public long[] scalarLoop(ElfFixture fixture) throws Throwable {
+        ByteBuffer file = fixture.data;
+        int start = (int) (long) Api.SECTION_OFFSET.invokeExact(fixture.textHeader);
+        int end = start + (int) (long) Api.SECTION_SIZE.invokeExact(fixture.textHeader);
+        long[] starts = new long[((end - start + 1) / 2 + 63) >>> 6];
+        int pos = start;
+        while (pos < end) {
+            int h = (pos - start) >>> 1;
+            starts[h >>> 6] |= 1L << h;
+            pos += (file.get(pos) & 0x3) == 3 ? 4 : 2;
+        }
+        return starts;
+    }
+
+    @Benchmark
+    public Object scanScalar(ElfFixture fixture) throws Throwable {
+        return (Object) Api.SCAN_BOUNDARIES.invokeExact(fixture.data, fixture.textHeader, false);
+    }
+
+    @Benchmark
+    public Object scanVector(ElfFixture fixture) throws Throwable {
+        return (Object) Api.SCAN_BOUNDARIES.invokeExact(fixture.data, fixture.textHeader, true);
+    }
+}
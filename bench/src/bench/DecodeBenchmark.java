@@ -0,0 +1,74 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding throughput: single commands of each encoding, and the whole .text of a synthetic ELF.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+    private final static int BATCH = 1 << 16;
+
+    private final int[] uncompressed = new int[BATCH];
+    private final int[] compressed = new int[BATCH];
+    private Object symtab;
+
+    @Setup
+    public void setUp() throws Throwable {
+        symtab = (Object) Api.NEW_SYMBOL_INDEX.invokeExact();
+        Random random = new Random(42);
+        for (int i = 0; i < BATCH; i++) {
+            uncompressed[i] = SyntheticElf.uncompressedCommand(random);
+            compressed[i] = SyntheticElf.compressedCommand(random);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object parseUncompressed() throws Throwable {
+        Object text = (Object) Api.NEW_DECODED_TEXT.invokeExact(symtab, BATCH);
+        long address = 0x10074;
+        for (int data : uncompressed) {
+            Api.PARSE_UNCOMPRESSED.invokeExact(data, address, text);
+            address += 4;
+        }
+        return text;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public Object parseCompressed() throws Throwable {
+        Object text = (Object) Api.NEW_DECODED_TEXT.invokeExact(symtab, BATCH);
+        long address = 0x10074;
+        for (int data : compressed) {
+            Api.PARSE_COMPRESSED.invokeExact(data, address, text);
+            address += 2;
+        }
+        return text;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Object disasm(ElfFixture fixture) throws Throwable {
+        return (Object) Api.DISASM.invokeExact(fixture.data, fixture.textHeader, fixture.symtabIndex);
+    }
+}
@@ -0,0 +1,61 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * A synthetic ELF generated once per benchmark run and parsed the way {@code Main} does it.
+ */
+@State(Scope.Benchmark)
+public class ElfFixture {
+    @Param("1000000")
+    public int commands;
+
+    @Param("0.5")
+    public double rvcRatio;
+
+    @Param("20")
+    public int functionSize;
+
+    public ByteBuffer data;
+    public Object elf;
+    public Object header;
+    public Object textHeader;
+    public Object symtabHeader;
+    public int strtabOffset;
+    public Object symtab;
+    public Object symtabIndex;
+
+    private Path path;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Throwable {
+        path = Files.createTempFile("riscv-bench", ".elf");
+        SyntheticElf.write(path, commands, rvcRatio, functionSize, 42);
+        try (FileChannel channel = FileChannel.open(path)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        elf = (Object) Api.PARSE_ELF.invokeExact(data);
+        header = (Object) Api.ELF_HEADER.invokeExact(elf);
+        textHeader = (Object) Api.ELF_TEXT_HEADER.invokeExact(elf);
+        symtabHeader = (Object) Api.ELF_SYMTAB_HEADER.invokeExact(elf);
+        strtabOffset = (int) Api.ELF_STRTAB_OFFSET.invokeExact(elf);
+        symtab = (Object) Api.ELF_SYMTAB_FIELD.invokeExact(elf);
+        symtabIndex = (Object) Api.SYMTAB_TO_INDEX.invokeExact(symtab);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,54 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the ELF structures. The default fixture has a function every 20 commands,
+ * so .symtab of a million-command file holds 50000 symbols.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ElfParserBenchmark {
+    @Benchmark
+    public List<?> parseSectionHeaders(ElfFixture fixture) throws Throwable {
+        return (List<?>) Api.PARSE_SECTION_HEADERS.invokeExact(fixture.data, fixture.header);
+    }
+
+    @Benchmark
+    public Object parseSymtab(ElfFixture fixture) throws Throwable {
+        return (Object) Api.PARSE_SYMTAB.invokeExact(fixture.data, fixture.symtabHeader, fixture.strtabOffset);
+    }
+
+    @Benchmark
+    public int parseSymtabAndNames(ElfFixture fixture) throws Throwable {
+        List<?> symtab = (List<?>) (Object) Api.PARSE_SYMTAB.invokeExact(fixture.data, fixture.symtabHeader,
+                fixture.strtabOffset);
+        int length = 0;
+        for (Object entry : symtab) {
+            length += ((String) Api.ENTRY_NAME.invokeExact(entry)).length();
+        }
+        return length;
+    }
+
+    @Benchmark
+    public Object symtabToIndex(ElfFixture fixture) throws Throwable {
+        return (Object) Api.SYMTAB_TO_INDEX.invokeExact(fixture.symtab);
+    }
+
+    @Benchmark
+    public Object parseElf(ElfFixture fixture) throws Throwable {
+        return (Object) Api.PARSE_ELF.invokeExact(fixture.data);
+    }
+}
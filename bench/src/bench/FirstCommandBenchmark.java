@@ -0,0 +1,97 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time to the first decoded command in a fresh JVM: mapping the file, parsing the headers and decoding
+ * the first command of .text, on a file with {@code paddingMb} megabytes of data that isn't code after it.
+ * Every fork measures one cold call.
+ * <p>
+ * Resident memory is read from {@code /proc/self/status} (Linux only) before and after the call and printed
+ * with the fork output, the difference is what opening the file and decoding the first command cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class FirstCommandBenchmark {
+    @Param("200000")
+    public int commands;
+
+    @Param("400")
+    public int paddingMb;
+
+    private Path path;
+    private long rssBefore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        path = Files.createTempFile("riscv-bench", ".elf");
+        SyntheticElf.write(path, commands, 0.5, 20, 42);
+        try (RandomAccessFile file = new RandomAccessFile(path.toFile(), "rw")) {
+            file.setLength(file.length() + ((long) paddingMb << 20));
+        }
+        System.gc();
+        rssBefore = residentKb();
+    }
+
+    @Benchmark
+    public int openAndDecodeFirst() throws Throwable {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        Object elf = (Object) Api.PARSE_ELF.invokeExact(data);
+        Object textHeader = (Object) Api.ELF_TEXT_HEADER.invokeExact(elf);
+        int start = (int) (long) Api.SECTION_OFFSET.invokeExact(textHeader);
+        Object text = (Object) Api.NEW_DECODED_TEXT.invokeExact((Object) Api.NEW_SYMBOL_INDEX.invokeExact(), 1);
+        // the offset after the first command
+        return (int) Api.DISASM_RANGE.invokeExact(data, textHeader, start, start + 1, text);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        long rssAfter = residentKb();
+        System.out.println("VmRSS before " + rssBefore + " kB, after " + rssAfter + " kB, delta "
+                + (rssAfter - rssBefore) + " kB");
+        Files.deleteIfExists(path);
+    }
+
+    /**
+     * Returns the resident set size of this JVM in kilobytes or -1 if /proc isn't available.
+     */
+    private static long residentKb() throws IOException {
+        Path status = Path.of("/proc/self/status");
+        if (!Files.exists(status)) {
+            return -1;
+        }
+        for (String line : Files.readAllLines(status)) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+            }
+        }
+        return -1;
+    }
+}
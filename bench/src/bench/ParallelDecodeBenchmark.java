@@ -0,0 +1,34 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding the whole .text in chunks on a ForkJoinPool, the same as {@code --threads}. One thread takes
+ * the sequential path, so the first result is the baseline the others are compared with.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelDecodeBenchmark {
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    @Benchmark
+    public Object disasm(ElfFixture fixture) throws Throwable {
+        return (Object) Api.DISASM_THREADS.invokeExact(fixture.data, fixture.textHeader, fixture.symtabIndex, threads);
+    }
+}
@@ -0,0 +1,58 @@
+package bench;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering of the listing, plus the command header written by hand compared to {@link String#format}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+    private Object text;
+    private final StringBuilder header = new StringBuilder();
+
+    @Setup
+    public void setUp(ElfFixture fixture) throws Throwable {
+        text = (Object) Api.DISASM.invokeExact(fixture.data, fixture.textHeader, fixture.symtabIndex);
+    }
+
+    @Benchmark
+    public String disasmToString() throws Throwable {
+        return (String) Api.DISASM_TO_STRING.invokeExact(text);
+    }
+
+    @Benchmark
+    public String symtabToString(ElfFixture fixture) throws Throwable {
+        return (String) Api.SYMTAB_TO_STRING.invokeExact((List) fixture.symtab);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public String headerFormat() {
+        return String.format("%08x %20s: %s ", 0x10074L, "func_1", "addi");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int headerAppend() throws Throwable {
+        header.setLength(0);
+        Api.APPEND_HEADER.invokeExact(header, 0x10074L, "func_1", "addi");
+        return header.length();
+    }
+}
@@ -0,0 +1,185 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * Generates RISC-V ELF files of any size for the benchmarks: .text with a random mix of RV32IM and RVC commands
+ * and a .symtab with a FUNC symbol every few commands.
+ * <p>
+ * Usage: SyntheticElf &lt;output&gt; &lt;commands&gt; [rvc ratio] [commands per function]
+ */
+public class SyntheticElf {
+    private final static int BASE_ADDRESS = 0x10074;
+    private final static int HEADER_SIZE = 52;
+    private final static int SECTION_HEADER_SIZE = 40;
+    private final static int SYMTAB_ENTRY_SIZE = 16;
+    private final static String SECTION_NAMES = "\0.text\0.symtab\0.strtab\0.shstrtab\0";
+
+    // major opcodes of RV32IM commands: LOAD, MISC-MEM, OP-IMM, AUIPC, STORE, OP, LUI, BRANCH, JALR, JAL,
+    // SYSTEM
+    private final static int[] OPCODES = {0x03, 0x0f, 0x13, 0x17, 0x23, 0x33, 0x37, 0x63, 0x67, 0x6f, 0x73};
+    private final static int[] LOAD_FUNC3 = {0, 1, 2, 4, 5};
+    private final static int[] BRANCH_FUNC3 = {0, 1, 4, 5, 6, 7};
+    // (quadrant << 3) | func3 of RV32C integer commands, floating point ones are left out
+    private final static int[] COMPRESSED_GROUPS = {
+            0x00, 0x02, 0x06,
+            0x08, 0x09, 0x0a, 0x0b, 0x0c, 0x0d, 0x0e, 0x0f,
+            0x10, 0x12, 0x14, 0x16
+    };
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("Usage: SyntheticElf <output> <commands> [rvc ratio] [commands per function]");
+            return;
+        }
+        double rvcRatio = args.length > 2 ? Double.parseDouble(args[2]) : 0.5;
+        int functionSize = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        write(Path.of(args[0]), Integer.parseInt(args[1]), rvcRatio, functionSize, 42);
+    }
+
+    static int uncompressedCommand(Random random) {
+        int opcode = OPCODES[random.nextInt(OPCODES.length)];
+        int cmd = (random.nextInt() & ~0x7f) | opcode;
+        int func3 = (cmd >> 12) & 0x7;
+        switch (opcode) {
+            case 0x03 -> cmd = withFunc3(cmd, LOAD_FUNC3[random.nextInt(LOAD_FUNC3.length)]);
+            case 0x0f, 0x67 -> cmd = withFunc3(cmd, 0);
+            case 0x23 -> cmd = withFunc3(cmd, random.nextInt(3));
+            case 0x63 -> cmd = withFunc3(cmd, BRANCH_FUNC3[random.nextInt(BRANCH_FUNC3.length)]);
+            case 0x33 -> {
+                // func7 is 0, 1 (M extension) or 0x20 (sub, sra)
+                int func7 = random.nextInt(3) == 0 && (func3 == 0 || func3 == 5) ? 0x20 : random.nextInt(2);
+                cmd = (cmd & 0x01ffffff) | (func7 << 25);
+            }
+            case 0x13 -> {
+                if (func3 == 1 || func3 == 5) {
+                    cmd &= 0x41ffffff;
+                }
+            }
+            case 0x73 -> cmd = 0x73 | (random.nextInt(2) << 20); // ecall, ebreak
+            default -> {
+            }
+        }
+        return cmd;
+    }
+
+    private static int withFunc3(int cmd, int func3) {
+        return (cmd & ~0x7000) | (func3 << 12);
+    }
+
+    static int compressedCommand(Random random) {
+        int group = COMPRESSED_GROUPS[random.nextInt(COMPRESSED_GROUPS.length)];
+        int cmd;
+        do {
+            cmd = (random.nextInt() & 0x1ffc) | ((group & 0x7) << 13) | (group >> 3);
+        } while (cmd == 0);
+        return cmd;
+    }
+
+    /**
+     * Writes an ELF with {@code commands} commands in .text, {@code rvcRatio} of them compressed,
+     * and a function symbol every {@code functionSize} commands.
+     */
+    public static void write(Path path, int commands, double rvcRatio, int functionSize, long seed) throws IOException {
+        Random random = new Random(seed);
+        int functions = (commands + functionSize - 1) / functionSize;
+
+        ByteBuffer text = ByteBuffer.allocate(commands * 4).order(ByteOrder.LITTLE_ENDIAN);
+        int[] functionStarts = new int[functions];
+        for (int i = 0; i < commands; i++) {
+            if (i % functionSize == 0) {
+                functionStarts[i / functionSize] = text.position();
+            }
+            if (random.nextDouble() < rvcRatio) {
+                text.putShort((short) compressedCommand(random));
+            } else {
+                text.putInt(uncompressedCommand(random));
+            }
+        }
+        int textSize = text.position();
+
+        StringBuilder strtab = new StringBuilder("\0");
+        ByteBuffer symtab = ByteBuffer.allocate((functions + 1) * SYMTAB_ENTRY_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        symtab.position(SYMTAB_ENTRY_SIZE);
+        for (int i = 0; i < functions; i++) {
+            int end = i + 1 < functions ? functionStarts[i + 1] : textSize;
+            symtab.putInt(strtab.length());
+            symtab.putInt(BASE_ADDRESS + functionStarts[i]);
+            symtab.putInt(end - functionStarts[i]);
+            symtab.put((byte) 0x12); // GLOBAL FUNC
+            symtab.put((byte) 0);
+            symtab.putShort((short) 1);
+            strtab.append("func_").append(i).append('\0');
+        }
+        byte[] strtabBytes = strtab.toString().getBytes(StandardCharsets.US_ASCII);
+        byte[] namesBytes = SECTION_NAMES.getBytes(StandardCharsets.US_ASCII);
+
+        int textOffset = HEADER_SIZE;
+        int symtabOffset = align(textOffset + textSize);
+        int strtabOffset = symtabOffset + symtab.capacity();
+        int namesOffset = strtabOffset + strtabBytes.length;
+        int sectionsOffset = align(namesOffset + namesBytes.length);
+        int fileSize = sectionsOffset + 5 * SECTION_HEADER_SIZE;
+
+        ByteBuffer file = ByteBuffer.allocate(fileSize).order(ByteOrder.LITTLE_ENDIAN);
+        file.put(new byte[]{0x7f, 'E', 'L', 'F', 1, 1, 1, 0});
+        file.position(16);
+        file.putShort((short) 2); // e_type
+        file.putShort((short) 0xf3); // e_machine
+        file.putInt(1);
+        file.putInt(BASE_ADDRESS);
+        file.putInt(0); // e_phoff
+        file.putInt(sectionsOffset);
+        file.putInt(0); // e_flags
+        file.putShort((short) HEADER_SIZE);
+        file.putShort((short) 0);
+        file.putShort((short) 0);
+        file.putShort((short) SECTION_HEADER_SIZE);
+        file.putShort((short) 5);
+        file.putShort((short) 4); // e_shstrndx
+        file.put(textOffset, text.array(), 0, textSize);
+        file.put(symtabOffset, symtab.array());
+        file.put(strtabOffset, strtabBytes);
+        file.put(namesOffset, namesBytes);
+
+        file.position(sectionsOffset + SECTION_HEADER_SIZE);
+        putSection(file, SECTION_NAMES.indexOf(".text"), 1, 6, BASE_ADDRESS, textOffset, textSize, 0, 0, 2, 0);
+        putSection(file, SECTION_NAMES.indexOf(".symtab"), 2, 0, 0, symtabOffset, symtab.capacity(),
+                3, 1, 4, SYMTAB_ENTRY_SIZE);
+        putSection(file, SECTION_NAMES.indexOf(".strtab"), 3, 0, 0, strtabOffset, strtabBytes.length, 0, 0, 1, 0);
+        putSection(file, SECTION_NAMES.indexOf(".shstrtab"), 3, 0, 0, namesOffset, namesBytes.length, 0, 0, 1, 0);
+
+        file.clear();
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (file.hasRemaining()) {
+                channel.write(file);
+            }
+        }
+    }
+
+    private static int align(int offset) {
+        return (offset + 3) & ~3;
+    }
+
+    private static void putSection(ByteBuffer file, int name, int type, int flags, int address, int offset, int size,
+                                   int link, int info, int alignment, int entrySize) {
+        file.putInt(name);
+        file.putInt(type);
+        file.putInt(flags);
+        file.putInt(address);
+        file.putInt(offset);
+        file.putInt(size);
+        file.putInt(link);
+        file.putInt(info);
+        file.putInt(alignment);
+        file.putInt(entrySize);
+    }
+}
@@ -4,14 +4,26 @@ public class AsmCommand {
     public String name = "";
     public String[] args = {};
 
-    @Override
-    public String toString() {
-        StringBuilder res = new StringBuilder();
+    /**
+     * Appends the address, the symbol column and the name followed by a space, that is
+     * {@code "%08x %21s %s "} for commands without a symbol and {@code "%08x %20s: %s "} otherwise.
+     */
+    public static void appendHeader(StringBuilder res, long address, String symbol, String name) {
+        TextFormat.appendHex(res, address, 8);
+        res.append(' ');
         if (symbol.isEmpty()) {
-            res.append(String.format("%08x %21s %s ", address, "", name));
+            TextFormat.appendSpaces(res, 21);
         } else {
-            res.append(String.format("%08x %20s: %s ", address, symbol, name));
+            TextFormat.appendRight(res, symbol, 20);
+            res.append(':');
         }
+        res.append(' ').append(name).append(' ');
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder res = new StringBuilder();
+        appendHeader(res, address, symbol, name);
         for (int i = 0; i < args.length; i++) {
             res.append(args[i]);
             if (i != args.length - 1) {
@@ -0,0 +1,145 @@
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Disassembles many elf files in one JVM, writing {@code <file name>.txt} for each of them to the output directory.
+ * Inputs are given as a directory, a glob pattern or {@code @manifest} - a file listing one path per line.
+ */
+public class BatchRunner {
+    public static void run(Options options) {
+        List<Path> inputs;
+        Path outputDir = Path.of(options.output);
+        ListingCache cache;
+        try {
+            inputs = collectInputs(options.input);
+            Files.createDirectories(outputDir);
+            cache = options.openCache();
+        } catch (IOException e) {
+            System.out.println("An error occurred while preparing batch: " + e.getMessage());
+            return;
+        }
+
+        int workers = options.threads > 1 ? options.threads : Runtime.getRuntime().availableProcessors();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        long start = System.nanoTime();
+        List<Future<Integer>> results = new ArrayList<>();
+        Set<String> outputNames = new HashSet<>();
+        for (Path input : inputs) {
+            String name = input.getFileName() + ".txt";
+            for (int i = 1; !outputNames.add(name); i++) {
+                name = input.getFileName() + "." + i + ".txt";
+            }
+            Path output = outputDir.resolve(name);
+            results.add(pool.submit(() -> disassemble(input, output, cache)));
+        }
+
+        int failed = 0;
+        long commands = 0;
+        for (int i = 0; i < inputs.size(); i++) {
+            try {
+                commands += results.get(i).get();
+            } catch (ExecutionException e) {
+                failed++;
+                System.out.println(inputs.get(i) + ": " + describe(e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        pool.shutdown();
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf(
+                "Processed %d files (%d failed) in %.3f s: %.1f files/s, %.0f commands/s%n",
+                inputs.size(), failed, seconds, inputs.size() / seconds, commands / seconds
+        );
+        if (cache != null) {
+            System.out.printf(
+                    "Cache: %d hits, %d misses, %d evictions%n",
+                    cache.getHits(), cache.getMisses(), cache.getEvictions()
+            );
+            try {
+                cache.saveStats();
+            } catch (IOException e) {
+                System.out.println("An error occurred while saving cache stats: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of decoded commands, which is 0 if the listing was taken from the cache.
+     */
+    private static int disassemble(Path input, Path output, ListingCache cache)
+            throws IOException, ElfFormatException {
+        ElfFile elf = ElfFile.open(input);
+        String cacheKey = cache == null ? null : ListingCache.key(elf);
+        if (cacheKey != null && cache.copyTo(cacheKey, output)) {
+            return 0;
+        }
+        DecodedText text = Disasm.disasm(elf.data, elf.textHeader, Utils.symtabToIndex(elf.symtab));
+        try (ListingWriter writer = ListingWriter.open(output)) {
+            writer.writeListing(text, elf.symtab);
+        }
+        if (cacheKey != null) {
+            cache.store(cacheKey, output);
+        }
+        return text.size();
+    }
+
+    private static String describe(Throwable e) {
+        if (e instanceof ElfFormatException) {
+            return e.getMessage();
+        } else if (e instanceof IOException) {
+            return "An error occurred while processing file: " + e.getMessage();
+        }
+        return "An error occurred: " + e;
+    }
+
+    static List<Path> collectInputs(String source) throws IOException {
+        if (source.startsWith("@")) {
+            Path manifest = Path.of(source.substring(1));
+            Path base = manifest.toAbsolutePath().getParent();
+            List<Path> inputs = new ArrayList<>();
+            for (String line : Files.readAllLines(manifest)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    inputs.add(base.resolve(line));
+                }
+            }
+            return inputs;
+        }
+
+        Path root;
+        PathMatcher matcher;
+        if (Files.isDirectory(Path.of(source))) {
+            root = Path.of(source);
+            matcher = path -> true;
+        } else {
+            // walk from the deepest directory without glob characters
+            int firstGlobChar = 0;
+            while (firstGlobChar < source.length() && "*?[{".indexOf(source.charAt(firstGlobChar)) == -1) {
+                firstGlobChar++;
+            }
+            int separator = source.lastIndexOf('/', firstGlobChar);
+            root = Path.of(separator == -1 ? "." : source.substring(0, separator + 1));
+            matcher = FileSystems.getDefault().getPathMatcher("glob:" + source);
+            if (separator == -1) {
+                PathMatcher nameMatcher = matcher;
+                matcher = path -> nameMatcher.matches(root.relativize(path));
+            }
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            PathMatcher finalMatcher = matcher;
+            return paths.filter(Files::isRegularFile).filter(finalMatcher::matches).sorted().toList();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decoded .text in a compact little-endian file that other tools can read without parsing the text listing.
+ * <pre>
+ * header, 32 bytes:
+ *   0  u32 magic "RVDL"        4  u16 version       6  u16 record size
+ *   8  u32 record count       12  u32 mnemonic count
+ *  16  u32 records offset     20  u32 mnemonics offset (a u32 string index per mnemonic id)
+ *  24  u32 strings offset     28  u32 reserved
+ * record, 24 bytes, in address order:
+ *   0  u32 address             4  i32 immediate, for label operands the target offset from the address
+ *   8  i32 label of the command, string index or -1
+ *  12  i32 label of the target, string index or -1 if the command has no label operand
+ *  16  u16 mnemonic id        18  u8 length in bytes
+ *  19  u8 rd  20  u8 rs1  21  u8 rs2  22  u16 reserved
+ * strings: u32 count, u32 end offset of each string relative to the string data, UTF-8 string data
+ * </pre>
+ * Register fields hold register numbers, which are meaningful only for operands the mnemonic has.
+ * The reader maps the file and gives random access to records by index or address.
+ */
+public class BinaryListing {
+    public final static int MAGIC = 0x4c445652;
+    public final static int VERSION = 1;
+    private final static int HEADER_SIZE = 32;
+    private final static int RECORD_SIZE = 24;
+    private final static Mnemonic[] MNEMONICS = Mnemonic.values();
+
+    private final ByteBuffer data;
+    private final int count;
+    private final int recordsOffset;
+    private final int mnemonicsOffset;
+    private final int stringCount;
+    private final int stringEndsOffset;
+    private final int stringDataOffset;
+    private final String[] strings;
+
+    private BinaryListing(ByteBuffer data) throws IOException {
+        this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a binary listing");
+        }
+        if (data.getShort(4) != VERSION || data.getShort(6) != RECORD_SIZE) {
+            throw new IOException("Unsupported binary listing version " + data.getShort(4));
+        }
+        count = data.getInt(8);
+        recordsOffset = data.getInt(16);
+        mnemonicsOffset = data.getInt(20);
+        int stringsOffset = data.getInt(24);
+        stringCount = data.getInt(stringsOffset);
+        stringEndsOffset = stringsOffset + 4;
+        stringDataOffset = stringEndsOffset + 4 * stringCount;
+        strings = new String[stringCount];
+    }
+
+    public static BinaryListing open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new BinaryListing(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    private int record(int i) {
+        return recordsOffset + RECORD_SIZE * i;
+    }
+
+    public long getAddress(int i) {
+        return Integer.toUnsignedLong(data.getInt(record(i)));
+    }
+
+    public int getImm(int i) {
+        return data.getInt(record(i) + 4);
+    }
+
+    public long getTarget(int i) {
+        return getAddress(i) + getImm(i);
+    }
+
+    /**
+     * Returns the symbol or LOC_ label of the command, null if it has none.
+     */
+    public String getLabel(int i) {
+        return getString(data.getInt(record(i) + 8));
+    }
+
+    /**
+     * Returns the label operand of the command, null if it has none.
+     */
+    public String getTargetLabel(int i) {
+        return getString(data.getInt(record(i) + 12));
+    }
+
+    public int getMnemonicId(int i) {
+        return data.getShort(record(i) + 16) & 0xffff;
+    }
+
+    public String getMnemonic(int i) {
+        return getString(data.getInt(mnemonicsOffset + 4 * getMnemonicId(i)));
+    }
+
+    public int getLength(int i) {
+        return data.get(record(i) + 18);
+    }
+
+    public int getRd(int i) {
+        return data.get(record(i) + 19);
+    }
+
+    public int getRs1(int i) {
+        return data.get(record(i) + 20);
+    }
+
+    public int getRs2(int i) {
+        return data.get(record(i) + 21);
+    }
+
+    /**
+     * Returns the index of the command at the given address or -1 if no command starts there.
+     */
+    public int indexOf(long address) {
+        int lo = 0;
+        int hi = count - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midAddress = getAddress(mid);
+            if (midAddress < address) {
+                lo = mid + 1;
+            } else if (midAddress > address) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    private String getString(int index) {
+        if (index < 0) {
+            return null;
+        }
+        if (strings[index] == null) {
+            int start = index == 0 ? 0 : data.getInt(stringEndsOffset + 4 * (index - 1));
+            int end = data.getInt(stringEndsOffset + 4 * index);
+            byte[] bytes = new byte[end - start];
+            data.get(stringDataOffset + start, bytes);
+            strings[index] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings[index];
+    }
+
+    /**
+     * Writes the decoded commands of the elf file. Command lengths are taken from the bytes of .text.
+     */
+    public static void write(Path path, DecodedText text, ElfFile elf) throws IOException {
+        List<String> strings = new ArrayList<>();
+        Map<String, Integer> stringIndexes = new HashMap<>();
+        int[] mnemonicStrings = new int[MNEMONICS.length];
+        for (int i = 0; i < MNEMONICS.length; i++) {
+            mnemonicStrings[i] = intern(MNEMONICS[i].text, strings, stringIndexes);
+        }
+
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            // the header is written last, when offsets of the string table are known
+            channel.position(HEADER_SIZE);
+            ElfSectionInfo textHeader = elf.textHeader;
+            for (int i = 0; i < text.size(); i++) {
+                if (buffer.remaining() < RECORD_SIZE) {
+                    writeBuffer(channel, buffer);
+                }
+                long address = text.getAddress(i);
+                String symbol = text.getSymbol(i);
+                Mnemonic mnemonic = text.getMnemonic(i);
+                int offset = (int) (address - textHeader.sh_addr + textHeader.sh_offset);
+                buffer.putInt((int) address);
+                buffer.putInt(text.getImm(i));
+                buffer.putInt(symbol.isEmpty() ? -1 : intern(symbol, strings, stringIndexes));
+                buffer.putInt(mnemonic.format.hasTarget
+                        ? intern(text.getLabel(text.getTarget(i)), strings, stringIndexes) : -1);
+                buffer.putShort((short) mnemonic.ordinal());
+                buffer.put((byte) ((elf.data.get(offset) & 0x3) == 3 ? 4 : 2));
+                buffer.put((byte) text.getRd(i));
+                buffer.put((byte) text.getRs1(i));
+                buffer.put((byte) text.getRs2(i));
+                buffer.putShort((short) 0);
+            }
+            writeBuffer(channel, buffer);
+
+            long mnemonicsOffset = channel.position();
+            ByteBuffer mnemonics = ByteBuffer.allocate(4 * mnemonicStrings.length).order(ByteOrder.LITTLE_ENDIAN);
+            mnemonics.asIntBuffer().put(mnemonicStrings);
+            writeBuffer(channel, mnemonics.position(mnemonics.limit()));
+
+            long stringsOffset = channel.position();
+            List<byte[]> encoded = new ArrayList<>(strings.size());
+            buffer.putInt(strings.size());
+            int end = 0;
+            for (String s : strings) {
+                byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                end += bytes.length;
+                if (buffer.remaining() < 4) {
+                    writeBuffer(channel, buffer);
+                }
+                buffer.putInt(end);
+            }
+            writeBuffer(channel, buffer);
+            for (byte[] bytes : encoded) {
+                writeBuffer(channel, ByteBuffer.wrap(bytes).position(bytes.length));
+            }
+            if (channel.position() > Integer.MAX_VALUE) {
+                throw new IOException("Binary listing is too large");
+            }
+
+            buffer.putInt(MAGIC);
+            buffer.putShort((short) VERSION);
+            buffer.putShort((short) RECORD_SIZE);
+            buffer.putInt(text.size());
+            buffer.putInt(MNEMONICS.length);
+            buffer.putInt(HEADER_SIZE);
+            buffer.putInt((int) mnemonicsOffset);
+            buffer.putInt((int) stringsOffset);
+            buffer.putInt(0);
+            channel.position(0);
+            writeBuffer(channel, buffer);
+        }
+    }
+
+    private static int intern(String s, List<String> strings, Map<String, Integer> indexes) {
+        Integer index = indexes.get(s);
+        if (index == null) {
+            index = strings.size();
+            strings.add(s);
+            indexes.put(s, index);
+        }
+        return index;
+    }
+
+    private static void writeBuffer(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,233 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command starts of a section decoded from its first byte, one bit per halfword. The section is scanned in two
+ * passes: a mask of halfwords whose low bits are {@code 11}, i.e. that would start a 32-bit command, and a pass
+ * turning the mask into starts eight halfwords at a time with a table, since a 32-bit start hides the next halfword.
+ * The mask is computed with the Vector API when the {@code jdk.incubator.vector} module is present
+ * (run with {@code --add-modules jdk.incubator.vector}) and with a scalar loop reading four halfwords at once otherwise.
+ * <p>
+ * The bitmap gives the decoder chunk bounds without a sequential pass, range queries a command to start from,
+ * and counts of commands and compressed commands of any range without decoding it.
+ */
+public class CommandBoundaries {
+    private final static boolean VECTOR = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    // (entry << 8 | mask byte) -> starts byte | exit << 8, where entry and exit are 1 if the first halfword
+    // of the byte is the second half of a 32-bit command
+    private final static short[] STEPS = new short[512];
+
+    static {
+        for (int entry = 0; entry < 2; entry++) {
+            for (int mask = 0; mask < 256; mask++) {
+                int starts = 0;
+                int h = entry;
+                while (h < 8) {
+                    starts |= 1 << h;
+                    h += (mask >>> h & 1) + 1;
+                }
+                STEPS[entry << 8 | mask] = (short) (starts | (h - 8) << 8);
+            }
+        }
+    }
+
+    public final ElfSectionInfo section;
+    private final int halfwords;
+    private final long[] longMask;
+    private final long[] starts;
+    // commands starting before every word and after the last one
+    private final int[] ranks;
+
+    private CommandBoundaries(ElfSectionInfo section) {
+        this.section = section;
+        this.halfwords = (int) ((section.sh_size + 1) / 2);
+        this.longMask = new long[(halfwords + 63) >>> 6];
+        this.starts = new long[longMask.length];
+        this.ranks = new int[longMask.length + 1];
+    }
+
+    /**
+     * Scans the section, with the Vector API if it is available.
+     */
+    public static CommandBoundaries scan(ByteBuffer file, ElfSectionInfo section) {
+        return scan(file, section, VECTOR);
+    }
+
+    static CommandBoundaries scan(ByteBuffer file, ElfSectionInfo section, boolean vector) {
+        CommandBoundaries boundaries = new CommandBoundaries(section);
+        ByteBuffer data = file.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int scanned = vector ? VectorCommandMask.fill(data, section, boundaries.longMask) : 0;
+        fillMask(data, section, boundaries.longMask, scanned);
+        boundaries.resolve();
+        return boundaries;
+    }
+
+    /**
+     * Sets mask bits of halfwords from the given one to the end of the section.
+     */
+    private static void fillMask(ByteBuffer data, ElfSectionInfo section, long[] mask, int from) {
+        int start = (int) section.sh_offset;
+        int size = (int) section.sh_size;
+        int h = from;
+        for (; 2 * h + 8 <= size; h += 4) {
+            long x = data.getLong(start + 2 * h);
+            // bit 0 of every halfword is set if its two low bits are, then the four bits are packed together
+            long t = x & x >>> 1 & 0x0001_0001_0001_0001L;
+            long bits = (t | t >>> 15 | t >>> 30 | t >>> 45) & 0xf;
+            mask[h >>> 6] |= bits << (h & 63);
+        }
+        for (; 2 * h < size; h++) {
+            if ((data.get(start + 2 * h) & 0x3) == 3) {
+                mask[h >>> 6] |= 1L << (h & 63);
+            }
+        }
+    }
+
+    private void resolve() {
+        int entry = 0;
+        int total = 0;
+        for (int w = 0; w < starts.length; w++) {
+            long mask = longMask[w];
+            long bits = 0;
+            for (int shift = 0; shift < 64; shift += 8) {
+                int step = STEPS[entry << 8 | (int) (mask >>> shift) & 0xff];
+                bits |= (long) (step & 0xff) << shift;
+                entry = step >>> 8;
+            }
+            if (w == starts.length - 1 && (halfwords & 63) != 0) {
+                bits &= (1L << (halfwords & 63)) - 1;
+            }
+            starts[w] = bits;
+            ranks[w] = total;
+            total += Long.bitCount(bits);
+        }
+        ranks[starts.length] = total;
+    }
+
+    private int halfwordOf(long address) {
+        return (int) Math.min(Math.max(address - section.sh_addr + 1, 0) / 2, halfwords);
+    }
+
+    private boolean isStart(int h) {
+        return h < halfwords && (starts[h >>> 6] >>> (h & 63) & 1) != 0;
+    }
+
+    public boolean isStart(long address) {
+        return address >= section.sh_addr && ((address - section.sh_addr) & 1) == 0
+                && isStart((int) Math.min((address - section.sh_addr) / 2, halfwords));
+    }
+
+    /**
+     * Returns the number of commands in the section.
+     */
+    public int count() {
+        return ranks[starts.length];
+    }
+
+    /**
+     * Returns the number of commands starting before the address, that is the index of the command starting
+     * at it in the decoded section.
+     */
+    public int rank(long address) {
+        int h = halfwordOf(address);
+        if (h == halfwords) {
+            return count();
+        }
+        return ranks[h >>> 6] + Long.bitCount(starts[h >>> 6] & ((1L << (h & 63)) - 1));
+    }
+
+    /**
+     * Returns the number of compressed commands starting in [from, to).
+     */
+    public int countCompressed(long from, long to) {
+        int first = halfwordOf(from);
+        int last = halfwordOf(to);
+        int count = 0;
+        for (int h = first; h < last; ) {
+            int w = h >>> 6;
+            long bits = starts[w] & ~longMask[w] & (-1L << (h & 63));
+            int next = Math.min((w + 1) << 6, last);
+            if (next < (w + 1) << 6) {
+                bits &= (1L << (next & 63)) - 1;
+            }
+            count += Long.bitCount(bits);
+            h = next;
+        }
+        return count;
+    }
+
+    /**
+     * Returns the address of the first command starting at or after the given one, or the address where
+     * decoding of the section stops if there is none.
+     */
+    public long nextStart(long address) {
+        int h = halfwordOf(address);
+        while (h < halfwords) {
+            long bits = starts[h >>> 6] & (-1L << (h & 63));
+            if (bits != 0) {
+                return section.sh_addr + 2L * ((h & ~63) + Long.numberOfTrailingZeros(bits));
+            }
+            h = (h & ~63) + 64;
+        }
+        return end();
+    }
+
+    /**
+     * Returns the address after the last command, past the end of the section if that command is cut off.
+     */
+    public long end() {
+        for (int w = starts.length - 1; w >= 0; w--) {
+            if (starts[w] != 0) {
+                int h = (w << 6) + 63 - Long.numberOfLeadingZeros(starts[w]);
+                return section.sh_addr + 2L * h + ((longMask[w] >>> (h & 63) & 1) != 0 ? 4 : 2);
+            }
+        }
+        return section.sh_addr;
+    }
+
+    /**
+     * Returns file offsets of commands that split the section into chunks of at least chunkSize bytes.
+     * The first offset is the start of the section and the last one is where the decoding stops.
+     */
+    public List<Integer> chunkBounds(int chunkSize) {
+        long delta = section.sh_offset - section.sh_addr;
+        long end = end();
+        List<Integer> bounds = new ArrayList<>();
+        bounds.add((int) section.sh_offset);
+        long chunkStart = section.sh_addr;
+        while (true) {
+            long next = nextStart(chunkStart + chunkSize);
+            if (next >= section.sh_addr + section.sh_size) {
+                break;
+            }
+            bounds.add((int) (next + delta));
+            chunkStart = next;
+        }
+        bounds.add((int) (end + delta));
+        return bounds;
+    }
+
+    /**
+     * Returns the number of 64-bit words of {@link #getStarts} and {@link #getLongMask}.
+     */
+    public int wordCount() {
+        return starts.length;
+    }
+
+    /**
+     * Returns command starts of halfwords [64 * word, 64 * word + 64), bit i for halfword 64 * word + i.
+     */
+    public long getStarts(int word) {
+        return starts[word];
+    }
+
+    /**
+     * Returns the same halfwords with a bit set where a command starting there would be 32-bit.
+     */
+    public long getLongMask(int word) {
+        return longMask[word];
+    }
+}
@@ -0,0 +1,412 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Basic blocks and control-flow edges of every FUNC symbol, built from already decoded .text.
+ * Blocks are found with a worklist from the function entry, so bytes that can't be reached stay outside blocks.
+ * Calls ({@code jal} and {@code c.jal} with a link register, {@code c.jalr} and {@code jalr} with one) don't end
+ * a block, returns and other indirect jumps end it without successors. Edges leaving the function are dropped.
+ * <p>
+ * Everything is kept in primitive arrays: blocks of a function and edges of a block are consecutive,
+ * so successors of block {@code b} are edges {@code [getFirstEdge(b), getFirstEdge(b + 1))}.
+ */
+public class ControlFlowGraph {
+    public final static byte FALLTHROUGH = 0;
+    public final static byte TAKEN = 1;
+    public final static byte JUMP = 2;
+    private final static String[] KIND_NAMES = {"fallthrough", "taken", "jump"};
+
+    // what the last command of a block does with the control flow
+    private final static int NEXT = 0;
+    private final static int BRANCH = 1;
+    private final static int JUMP_TO = 2;
+    private final static int STOP = 3;
+
+    private final DecodedText text;
+
+    private int functionCount = 0;
+    private long[] functionAddresses = new long[16];
+    private String[] functionNames = new String[16];
+    private int[] functionFirstBlocks = new int[17];
+
+    private int blockCount = 0;
+    private int[] blockFirst = new int[64];
+    private int[] blockLast = new int[64];
+    private int[] blockFirstEdges = new int[65];
+
+    private int edgeCount = 0;
+    private int[] edgeTo = new int[64];
+    private byte[] edgeKinds = new byte[64];
+
+    // block of every command of the text, -1 for commands outside blocks
+    private final int[] blockOf;
+
+    private ControlFlowGraph(DecodedText text) {
+        this.text = text;
+        this.blockOf = new int[text.size()];
+        Arrays.fill(blockOf, -1);
+    }
+
+    /**
+     * Builds graphs of all FUNC symbols of the elf file inside the decoded text.
+     * A function of zero size is taken up to the next function or the end of the text.
+     */
+    public static ControlFlowGraph build(DecodedText text, ElfSymtab symtab) {
+        ControlFlowGraph graph = new ControlFlowGraph(text);
+        if (text.size() == 0) {
+            return graph;
+        }
+        long textStart = text.getAddress(0);
+        long textEnd = text.getAddress(text.size() - 1) + 2;
+        ElfFunctions functions = symtab.functions(textStart, textEnd);
+
+        long[] visited = new long[(text.size() + 63) >>> 6];
+        long[] leaders = new long[visited.length];
+        int[] worklist = new int[16];
+        for (int f = 0; f < functions.count; f++) {
+            long address = functions.starts[f];
+            int from = text.indexOf(address);
+            if (from < 0) {
+                continue; // the function starts in the middle of a command
+            }
+            int to = lowerBound(text, functions.ends[f]);
+            worklist = graph.addFunction(address, functions.names[f], from, to, visited, leaders, worklist);
+        }
+        graph.functionFirstBlocks[graph.functionCount] = graph.blockCount;
+        graph.blockFirstEdges[graph.blockCount] = graph.edgeCount;
+        return graph;
+    }
+
+    private static int lowerBound(DecodedText text, long address) {
+        int lo = 0;
+        int hi = text.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (text.getAddress(mid) < address) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private int flow(int i) {
+        return switch (text.getMnemonic(i)) {
+            case BEQ, BNE, BLT, BGE, BLTU, BGEU, C_BEQZ, C_BNEZ -> BRANCH;
+            case JAL -> text.getRd(i) == 0 ? JUMP_TO : NEXT;
+            case C_J -> JUMP_TO;
+            case JALR -> text.getRd(i) == 0 ? STOP : NEXT;
+            case C_JR -> STOP;
+            default -> NEXT;
+        };
+    }
+
+    /**
+     * Returns the index of the target command if it is inside [from, to), -1 otherwise.
+     */
+    private int target(int i, int from, int to) {
+        long address = text.getTarget(i);
+        if (address < text.getAddress(from) || address >= text.getAddress(to - 1) + 2) {
+            return -1;
+        }
+        int target = text.indexOf(address);
+        return target < from || target >= to ? -1 : target;
+    }
+
+    private static boolean test(long[] bits, int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    private static void set(long[] bits, int i) {
+        bits[i >>> 6] |= 1L << i;
+    }
+
+    private int[] addFunction(long address, String name, int from, int to,
+                              long[] visited, long[] leaders, int[] worklist) {
+        if (functionCount == functionAddresses.length) {
+            functionAddresses = Arrays.copyOf(functionAddresses, functionCount * 2);
+            functionNames = Arrays.copyOf(functionNames, functionCount * 2);
+            functionFirstBlocks = Arrays.copyOf(functionFirstBlocks, functionCount * 2 + 1);
+        }
+        functionAddresses[functionCount] = address;
+        functionNames[functionCount] = name;
+        functionFirstBlocks[functionCount] = blockCount;
+        functionCount++;
+
+        // mark reachable commands and block leaders
+        int pending = 0;
+        worklist[pending++] = from;
+        set(visited, from);
+        set(leaders, from);
+        while (pending > 0) {
+            int i = worklist[--pending];
+            int flow = flow(i);
+            int next = i + 1 < to ? i + 1 : -1;
+            int jump = flow == BRANCH || flow == JUMP_TO ? target(i, from, to) : -1;
+            if (flow == BRANCH && next >= 0) {
+                set(leaders, next);
+            }
+            if (jump >= 0) {
+                set(leaders, jump);
+            }
+            if (flow == JUMP_TO || flow == STOP) {
+                next = -1;
+            }
+            if (worklist.length < pending + 2) {
+                worklist = Arrays.copyOf(worklist, worklist.length * 2);
+            }
+            if (next >= 0 && !test(visited, next)) {
+                set(visited, next);
+                worklist[pending++] = next;
+            }
+            if (jump >= 0 && !test(visited, jump)) {
+                set(visited, jump);
+                worklist[pending++] = jump;
+            }
+        }
+
+        // split reachable commands into blocks
+        int firstBlock = blockCount;
+        for (int i = from; i < to; i++) {
+            if (!test(visited, i)) {
+                continue;
+            }
+            if (i == from || test(leaders, i) || !test(visited, i - 1) || flow(i - 1) != NEXT) {
+                addBlock(i);
+            }
+            blockOf[i] = blockCount - 1;
+            blockLast[blockCount - 1] = i;
+        }
+
+        // successors of every block, in block order
+        for (int b = firstBlock; b < blockCount; b++) {
+            blockFirstEdges[b] = edgeCount;
+            int last = blockLast[b];
+            int flow = flow(last);
+            if (flow == BRANCH || flow == JUMP_TO) {
+                int jump = target(last, from, to);
+                if (jump >= 0) {
+                    addEdge(blockOf[jump], flow == BRANCH ? TAKEN : JUMP);
+                }
+            }
+            if ((flow == BRANCH || flow == NEXT) && last + 1 < to) {
+                addEdge(blockOf[last + 1], FALLTHROUGH);
+            }
+        }
+
+        // clear the marks for the next function, only its own range was touched
+        Arrays.fill(visited, from >>> 6, ((to - 1) >>> 6) + 1, 0);
+        Arrays.fill(leaders, from >>> 6, ((to - 1) >>> 6) + 1, 0);
+        return worklist;
+    }
+
+    private void addBlock(int first) {
+        if (blockCount + 1 >= blockFirstEdges.length) {
+            int capacity = blockFirst.length * 2;
+            blockFirst = Arrays.copyOf(blockFirst, capacity);
+            blockLast = Arrays.copyOf(blockLast, capacity);
+            blockFirstEdges = Arrays.copyOf(blockFirstEdges, capacity + 1);
+        }
+        blockFirst[blockCount] = first;
+        blockCount++;
+    }
+
+    private void addEdge(int to, byte kind) {
+        if (edgeCount == edgeTo.length) {
+            edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+            edgeKinds = Arrays.copyOf(edgeKinds, edgeCount * 2);
+        }
+        edgeTo[edgeCount] = to;
+        edgeKinds[edgeCount] = kind;
+        edgeCount++;
+    }
+
+    public int functionCount() {
+        return functionCount;
+    }
+
+    public long getFunctionAddress(int f) {
+        return functionAddresses[f];
+    }
+
+    public String getFunctionName(int f) {
+        return functionNames[f];
+    }
+
+    /**
+     * Blocks of function {@code f} are [getFirstBlock(f), getFirstBlock(f + 1)), the first one is the entry.
+     */
+    public int getFirstBlock(int f) {
+        return functionFirstBlocks[f];
+    }
+
+    public int blockCount() {
+        return blockCount;
+    }
+
+    /**
+     * Returns the index in the decoded text of the first command of the block.
+     */
+    public int getBlockFirst(int b) {
+        return blockFirst[b];
+    }
+
+    /**
+     * Returns the index in the decoded text of the last command of the block.
+     */
+    public int getBlockLast(int b) {
+        return blockLast[b];
+    }
+
+    /**
+     * Returns the block containing the command with the given index in the decoded text or -1 if none does.
+     */
+    public int getBlockOf(int command) {
+        return blockOf[command];
+    }
+
+    /**
+     * Edges leaving block {@code b} are [getFirstEdge(b), getFirstEdge(b + 1)).
+     */
+    public int getFirstEdge(int b) {
+        return blockFirstEdges[b];
+    }
+
+    public int edgeCount() {
+        return edgeCount;
+    }
+
+    public int getEdgeTo(int e) {
+        return edgeTo[e];
+    }
+
+    public byte getEdgeKind(int e) {
+        return edgeKinds[e];
+    }
+
+    public int getBlockCount(int f) {
+        return functionFirstBlocks[f + 1] - functionFirstBlocks[f];
+    }
+
+    public int getEdgeCount(int f) {
+        return blockFirstEdges[functionFirstBlocks[f + 1]] - blockFirstEdges[functionFirstBlocks[f]];
+    }
+
+    /**
+     * Writes the number of blocks and edges of every function, one function per line.
+     */
+    public void writeCounts(ListingWriter writer) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int f = 0; f < functionCount; f++) {
+            line.setLength(0);
+            TextFormat.appendHex(line, functionAddresses[f], 8);
+            line.append(' ').append(functionNames[f]).append(' ').append(getBlockCount(f))
+                    .append(' ').append(getEdgeCount(f));
+            writer.write(line.toString());
+            writer.newLine();
+        }
+    }
+
+    /**
+     * Writes the graph in the Graphviz format with a cluster per function.
+     */
+    public void writeDot(ListingWriter writer) throws IOException {
+        StringBuilder line = new StringBuilder();
+        writer.write("digraph cfg {");
+        writer.newLine();
+        writer.write("  node [shape=box];");
+        writer.newLine();
+        for (int f = 0; f < functionCount; f++) {
+            line.setLength(0);
+            line.append("  subgraph cluster_").append(f).append(" {");
+            writer.write(line.toString());
+            writer.newLine();
+            line.setLength(0);
+            line.append("    label=");
+            appendQuoted(line, functionNames[f]);
+            line.append(';');
+            writer.write(line.toString());
+            writer.newLine();
+            for (int b = functionFirstBlocks[f]; b < functionFirstBlocks[f + 1]; b++) {
+                line.setLength(0);
+                line.append("    b").append(b).append(" [label=\"");
+                TextFormat.appendHex(line, text.getAddress(blockFirst[b]), 8);
+                line.append('-');
+                TextFormat.appendHex(line, text.getAddress(blockLast[b]), 8);
+                line.append("\"];");
+                writer.write(line.toString());
+                writer.newLine();
+            }
+            writer.write("  }");
+            writer.newLine();
+            for (int b = functionFirstBlocks[f]; b < functionFirstBlocks[f + 1]; b++) {
+                for (int e = blockFirstEdges[b]; e < blockFirstEdges[b + 1]; e++) {
+                    line.setLength(0);
+                    line.append("  b").append(b).append(" -> b").append(edgeTo[e])
+                            .append(" [label=").append(KIND_NAMES[edgeKinds[e]]).append("];");
+                    writer.write(line.toString());
+                    writer.newLine();
+                }
+            }
+        }
+        writer.write("}");
+        writer.newLine();
+    }
+
+    /**
+     * Writes the graph as JSON, one function per line. Blocks are numbered from 0 inside each function
+     * and given by the addresses of their first and last commands.
+     */
+    public void writeJson(ListingWriter writer) throws IOException {
+        StringBuilder line = new StringBuilder();
+        writer.write("{\"functions\": [");
+        writer.newLine();
+        for (int f = 0; f < functionCount; f++) {
+            int firstBlock = functionFirstBlocks[f];
+            line.setLength(0);
+            line.append("{\"name\": ");
+            appendQuoted(line, functionNames[f]);
+            line.append(", \"address\": ").append(functionAddresses[f])
+                    .append(", \"blockCount\": ").append(getBlockCount(f))
+                    .append(", \"edgeCount\": ").append(getEdgeCount(f))
+                    .append(", \"blocks\": [");
+            for (int b = firstBlock; b < functionFirstBlocks[f + 1]; b++) {
+                line.append(b == firstBlock ? "" : ", ")
+                        .append('[').append(text.getAddress(blockFirst[b]))
+                        .append(", ").append(text.getAddress(blockLast[b])).append(']');
+            }
+            line.append("], \"edges\": [");
+            String separator = "";
+            for (int b = firstBlock; b < functionFirstBlocks[f + 1]; b++) {
+                for (int e = blockFirstEdges[b]; e < blockFirstEdges[b + 1]; e++) {
+                    line.append(separator).append('[').append(b - firstBlock)
+                            .append(", ").append(edgeTo[e] - firstBlock)
+                            .append(", \"").append(KIND_NAMES[edgeKinds[e]]).append("\"]");
+                    separator = ", ";
+                }
+            }
+            line.append("]}").append(f + 1 < functionCount ? "," : "");
+            writer.write(line.toString());
+            writer.newLine();
+        }
+        writer.write("]}");
+        writer.newLine();
+    }
+
+    private static void appendQuoted(StringBuilder res, String s) {
+        res.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                res.append('\\').append(c);
+            } else if (c < 0x20) {
+                res.append("\\u00");
+                TextFormat.appendHex(res, c, 2);
+            } else {
+                res.append(c);
+            }
+        }
+        res.append('"');
+    }
+}
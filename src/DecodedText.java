@@ -0,0 +1,392 @@
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Disassembled commands stored column by column in primitive arrays.
+ * Operand text is produced only when a command is rendered.
+ */
+public class DecodedText {
+    private final static Mnemonic[] MNEMONICS = Mnemonic.values();
+    private final static String[] FENCE_ARGUMENTS = new String[16];
+
+    static {
+        for (int i = 0; i < FENCE_ARGUMENTS.length; i++) {
+            FENCE_ARGUMENTS[i] = convertFenceArgument(i);
+        }
+    }
+
+    private final SymbolIndex symtab;
+    // targets of commands with a label operand, one bit per 2 bytes starting at the first command,
+    // or sorted addresses if commands are spread too thin for a bitset, built on the first lookup
+    // and dropped when commands are added
+    private long[] taggedLines = null;
+    private long[] taggedTargets = null;
+
+    private int size = 0;
+    private int[] addresses;
+    private short[] mnemonics;
+    private byte[] rd;
+    private byte[] rs1;
+    private byte[] rs2;
+    private int[] imms;
+
+    public DecodedText(SymbolIndex symtab, int capacity) {
+        this.symtab = symtab;
+        capacity = Math.max(capacity, 16);
+        addresses = new int[capacity];
+        mnemonics = new short[capacity];
+        rd = new byte[capacity];
+        rs1 = new byte[capacity];
+        rs2 = new byte[capacity];
+        imms = new int[capacity];
+    }
+
+    private void grow() {
+        int capacity = addresses.length + (addresses.length >> 1);
+        addresses = Arrays.copyOf(addresses, capacity);
+        mnemonics = Arrays.copyOf(mnemonics, capacity);
+        rd = Arrays.copyOf(rd, capacity);
+        rs1 = Arrays.copyOf(rs1, capacity);
+        rs2 = Arrays.copyOf(rs2, capacity);
+        imms = Arrays.copyOf(imms, capacity);
+    }
+
+    /**
+     * Appends a command. For commands with a label operand {@code imm} is the offset
+     * of the target relative to {@code address}.
+     */
+    public void add(long address, Mnemonic mnemonic, int rd, int rs1, int rs2, int imm) {
+        if (size == addresses.length) {
+            grow();
+        }
+        addresses[size] = (int) address;
+        mnemonics[size] = (short) mnemonic.ordinal();
+        this.rd[size] = (byte) rd;
+        this.rs1[size] = (byte) rs1;
+        this.rs2[size] = (byte) rs2;
+        imms[size] = imm;
+        size++;
+        taggedLines = null;
+        taggedTargets = null;
+    }
+
+    /**
+     * Merges consecutive parts of .text decoded separately, labels of all parts are shared.
+     */
+    public static DecodedText concat(SymbolIndex symtab, List<DecodedText> parts) {
+        int size = 0;
+        for (var part : parts) {
+            size += part.size;
+        }
+        DecodedText res = new DecodedText(symtab, size);
+        for (var part : parts) {
+            System.arraycopy(part.addresses, 0, res.addresses, res.size, part.size);
+            System.arraycopy(part.mnemonics, 0, res.mnemonics, res.size, part.size);
+            System.arraycopy(part.rd, 0, res.rd, res.size, part.size);
+            System.arraycopy(part.rs1, 0, res.rs1, res.size, part.size);
+            System.arraycopy(part.rs2, 0, res.rs2, res.size, part.size);
+            System.arraycopy(part.imms, 0, res.imms, res.size, part.size);
+            res.size += part.size;
+        }
+        return res;
+    }
+
+    /**
+     * Appends commands [from, to) of another text.
+     */
+    public void addAll(DecodedText other, int from, int to) {
+        int count = to - from;
+        while (addresses.length < size + count) {
+            grow();
+        }
+        System.arraycopy(other.addresses, from, addresses, size, count);
+        System.arraycopy(other.mnemonics, from, mnemonics, size, count);
+        System.arraycopy(other.rd, from, rd, size, count);
+        System.arraycopy(other.rs1, from, rs1, size, count);
+        System.arraycopy(other.rs2, from, rs2, size, count);
+        System.arraycopy(other.imms, from, imms, size, count);
+        size += count;
+        taggedLines = null;
+        taggedTargets = null;
+    }
+
+    /**
+     * Returns the index of the command at the given address or -1 if no command starts there.
+     * Commands are expected to be in address order.
+     */
+    public int indexOf(long address) {
+        int lo = 0;
+        int hi = size - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midAddress = getAddress(mid);
+            if (midAddress < address) {
+                lo = mid + 1;
+            } else if (midAddress > address) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MNEMONICS.length);
+        out.writeInt(size);
+        // column by column, so that reading back is a few bulk copies
+        ByteBuffer block = ByteBuffer.allocate(size * 4);
+        block.asIntBuffer().put(addresses, 0, size);
+        out.write(block.array(), 0, size * 4);
+        block.clear();
+        block.asShortBuffer().put(mnemonics, 0, size);
+        out.write(block.array(), 0, size * 2);
+        out.write(rd, 0, size);
+        out.write(rs1, 0, size);
+        out.write(rs2, 0, size);
+        block.clear();
+        block.asIntBuffer().put(imms, 0, size);
+        out.write(block.array(), 0, size * 4);
+    }
+
+    /**
+     * Reads a text written by {@link #writeTo(DataOutputStream)} from a big-endian buffer, returns null if it was
+     * written with a different set of mnemonics.
+     */
+    public static DecodedText readFrom(ByteBuffer in, SymbolIndex symtab) {
+        if (in.getInt() != MNEMONICS.length) {
+            return null;
+        }
+        int size = in.getInt();
+        DecodedText text = new DecodedText(symtab, size);
+        in.asIntBuffer().get(text.addresses, 0, size);
+        in.position(in.position() + size * 4);
+        in.asShortBuffer().get(text.mnemonics, 0, size);
+        in.position(in.position() + size * 2);
+        in.get(text.rd, 0, size);
+        in.get(text.rs1, 0, size);
+        in.get(text.rs2, 0, size);
+        in.asIntBuffer().get(text.imms, 0, size);
+        in.position(in.position() + size * 4);
+        text.size = size;
+        return text;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getAddress(int i) {
+        return Integer.toUnsignedLong(addresses[i]);
+    }
+
+    public Mnemonic getMnemonic(int i) {
+        return MNEMONICS[mnemonics[i]];
+    }
+
+    public int getRd(int i) {
+        return rd[i];
+    }
+
+    public int getRs1(int i) {
+        return rs1[i];
+    }
+
+    public int getRs2(int i) {
+        return rs2[i];
+    }
+
+    public int getImm(int i) {
+        return imms[i];
+    }
+
+    public long getTarget(int i) {
+        return getAddress(i) + imms[i];
+    }
+
+    public void appendLabel(StringBuilder res, long address) {
+        String name = symtab.get(address);
+        if (name != null) {
+            res.append(name);
+        } else {
+            res.append("LOC_");
+            TextFormat.appendHex(res, address, 5);
+        }
+    }
+
+    public String getLabel(long address) {
+        StringBuilder res = new StringBuilder();
+        appendLabel(res, address);
+        return res.toString();
+    }
+
+    private void tagLines() {
+        long first = getAddress(0);
+        long words = ((getAddress(size - 1) - first) >>> 7) + 1;
+        if (words > size) {
+            tagTargets(first);
+            return;
+        }
+        long[] tagged = new long[(int) words];
+        long limit = (long) tagged.length << 7;
+        for (int i = 0; i < size; i++) {
+            if (getMnemonic(i).format.hasTarget) {
+                long offset = getTarget(i) - first;
+                // commands start at even offsets, other targets can't get a label
+                if (offset >= 0 && offset < limit && (offset & 1) == 0) {
+                    tagged[(int) (offset >>> 7)] |= 1L << (offset >>> 1);
+                }
+            }
+        }
+        taggedLines = tagged;
+    }
+
+    /**
+     * Collects sorted targets instead of the bitset when commands are spread over a range much larger
+     * than their number, like sections far apart in the address space.
+     */
+    private void tagTargets(long first) {
+        long last = getAddress(size - 1);
+        long[] targets = new long[16];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (getMnemonic(i).format.hasTarget) {
+                long target = getTarget(i);
+                if (target >= first && target <= last && ((target - first) & 1) == 0) {
+                    if (count == targets.length) {
+                        targets = Arrays.copyOf(targets, count * 2);
+                    }
+                    targets[count++] = target;
+                }
+            }
+        }
+        Arrays.sort(targets, 0, count);
+        taggedTargets = Arrays.copyOf(targets, count);
+    }
+
+    /**
+     * Finds targets of commands with a label operand, which get LOC_ labels. It is done on the first lookup
+     * of a label anyway; renderers call it up front so that it is measured as a stage of its own.
+     */
+    public void resolveLabels() {
+        if (size == 0 || taggedLines != null || taggedTargets != null) {
+            return;
+        }
+        Metrics.Span span = Metrics.begin(Metrics.Stage.RESOLVE_LABELS);
+        tagLines();
+        Metrics.end(span, 4L * size);
+    }
+
+    private boolean isTagged(long address) {
+        if (size == 0) {
+            return false;
+        }
+        resolveLabels();
+        if (taggedTargets != null) {
+            return Arrays.binarySearch(taggedTargets, address) >= 0;
+        }
+        long offset = address - getAddress(0);
+        int word = (int) (offset >>> 7);
+        return offset >= 0 && word < taggedLines.length && (offset & 1) == 0
+                && (taggedLines[word] & (1L << (offset >>> 1))) != 0;
+    }
+
+    private boolean hasLocalLabel(long address) {
+        return !symtab.containsKey(address) && isTagged(address);
+    }
+
+    public String getSymbol(int i) {
+        long address = getAddress(i);
+        String name = symtab.get(address);
+        if (name != null) {
+            return name;
+        }
+        return isTagged(address) ? getLabel(address) : "";
+    }
+
+    private static String convertFenceArgument(int a) {
+        String res = "";
+        if ((a & 8) > 0) {
+            res += "i";
+        }
+        if ((a & 4) > 0) {
+            res += "o";
+        }
+        if ((a & 2) > 0) {
+            res += "r";
+        }
+        if ((a & 1) > 0) {
+            res += "w";
+        }
+        return res;
+    }
+
+    private void appendOperand(StringBuilder res, int i, OperandFormat.Operand operand) {
+        switch (operand) {
+            case RD -> res.append(Disasm.REG_NAMES[rd[i]]);
+            case RS1 -> res.append(Disasm.REG_NAMES[rs1[i]]);
+            case RS2 -> res.append(Disasm.REG_NAMES[rs2[i]]);
+            case IMM -> res.append(imms[i]);
+            case MEM -> res.append(imms[i]).append('(').append(Disasm.REG_NAMES[rs1[i]]).append(')');
+            case TARGET -> appendLabel(res, getTarget(i));
+            case FENCE_PRED -> res.append(FENCE_ARGUMENTS[imms[i] >> 4]);
+            case FENCE_SUCC -> res.append(FENCE_ARGUMENTS[imms[i] & 0xf]);
+        }
+    }
+
+    public String[] getArgs(int i) {
+        OperandFormat.Operand[] operands = getMnemonic(i).format.operands;
+        String[] args = new String[operands.length];
+        for (int j = 0; j < operands.length; j++) {
+            StringBuilder arg = new StringBuilder();
+            appendOperand(arg, i, operands[j]);
+            args[j] = arg.toString();
+        }
+        return args;
+    }
+
+    /**
+     * Renders the i-th command exactly like {@link AsmCommand#toString()}.
+     */
+    public void appendCommand(StringBuilder res, int i) {
+        long address = getAddress(i);
+        String name = getMnemonic(i).text;
+        if (hasLocalLabel(address)) {
+            // same as AsmCommand.appendHeader, without building the label string
+            TextFormat.appendHex(res, address, 8);
+            res.append(' ');
+            TextFormat.appendSpaces(res, 20 - 4 - Math.max(5, TextFormat.hexLength(address)));
+            res.append("LOC_");
+            TextFormat.appendHex(res, address, 5);
+            res.append(": ").append(name).append(' ');
+        } else {
+            AsmCommand.appendHeader(res, address, symtab.getOrDefault(address, ""), name);
+        }
+        OperandFormat.Operand[] operands = getMnemonic(i).format.operands;
+        for (int j = 0; j < operands.length; j++) {
+            appendOperand(res, i, operands[j]);
+            if (j != operands.length - 1) {
+                res.append(", ");
+            }
+        }
+    }
+
+    public AsmCommand getCommand(int i) {
+        AsmCommand cmd = new AsmCommand();
+        cmd.address = getAddress(i);
+        cmd.symbol = getSymbol(i);
+        cmd.name = getMnemonic(i).text;
+        cmd.args = getArgs(i);
+        return cmd;
+    }
+
+    public List<AsmCommand> toCommands() {
+        List<AsmCommand> commands = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            commands.add(getCommand(i));
+        }
+        return commands;
+    }
+}
@@ -1,29 +1,16 @@
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 public class Disasm {
-    private final static String[] REG_NAMES = {
+    final static String[] REG_NAMES = {
             "zero", "ra", "sp", "gp", "tp", "t0", "t1", "t2",
             "s0", "s1", "a0", "a1", "a2", "a3", "a4", "a5",
             "a6", "a7", "s2", "s3", "s4", "s5", "s6", "s7",
             "s8", "s9", "s10", "s11", "t3", "t4", "t5", "t6"
     };
 
-    private final static String[] REG_NAMES_RVC = {
-            "s0", "s1", "a0", "a1", "a2", "a3", "a4", "a5"
-    };
-
-    private static byte[] readBytes(byte[] file, int offset, int size) {
-        return Arrays.copyOfRange(file, offset, offset + size);
-    }
-
-    private static int toInt(byte[] data) {
-        int res = 0;
-        for (int i = 0; i < data.length; i++) {
-            res |= (data[i] & 0xff) << (8 * i);
-        }
-        return res;
-    }
-
     private static int getSubBits(int a, int from, int to) {
         return (a << (31 - to)) >>> (31 + from - to);
         //return (int) (((long) a & ((1L << (to + 1)) - 1)) >>> from);
@@ -67,233 +54,125 @@ public class Disasm {
         return getSubBits(a, 12, 31) << 12;
     }
 
-    private static String convertFenceArgument(int a) {
-        String res = "";
-        if ((a & 8) > 0) {
-            res += "i";
-        }
-        if ((a & 4) > 0) {
-            res += "o";
-        }
-        if ((a & 2) > 0) {
-            res += "r";
-        }
-        if ((a & 1) > 0) {
-            res += "w";
-        }
-        return res;
+    private final static Mnemonic[] UNCOMPRESSED_TABLE = buildUncompressedTable();
+
+    private static int uncompressedIndex(int opcode, int func3, int func7) {
+        return (opcode << 10) | (func3 << 7) | func7;
     }
 
-    private static String getSymbol(long addr, Map<Long, String> symtab, Set<Long> taggedLines) {
-        taggedLines.add(addr);
-        if (symtab.containsKey(addr)) {
-            return symtab.get(addr);
+    private static void put(Mnemonic[] table, int opcode, int func3, Mnemonic mnemonic) {
+        for (int func7 = 0; func7 < 128; func7++) {
+            table[uncompressedIndex(opcode, func3, func7)] = mnemonic;
         }
-        return String.format("LOC_%05x", addr);
     }
 
-    private static AsmCommand parseUncompressedCmd(int data, long addr, Map<Long, String> symtab, Set<Long> tagged) {
-        AsmCommand cmd = new AsmCommand();
-        cmd.address = addr;
-        int func3 = getSubBits(data, 12, 14);
-        int opcode = getSubBits(data, 2, 6);
+    private static void put(Mnemonic[] table, int opcode, int func3, int func7, Mnemonic mnemonic) {
+        table[uncompressedIndex(opcode, func3, func7)] = mnemonic;
+    }
+
+    private static Mnemonic[] buildUncompressedTable() {
+        Mnemonic[] table = new Mnemonic[1 << 15];
+        Arrays.fill(table, Mnemonic.UNKNOWN);
         // rv32i and rv32m only
-        if (opcode == 0x18) { // conditional branches
-            cmd.name = switch (func3) {
-                case 0 -> "beq";
-                case 1 -> "bne";
-                case 4 -> "blt";
-                case 5 -> "bge";
-                case 6 -> "bltu";
-                case 7 -> "bgeu";
-                default -> "unknown_command";
-            };
-            if (!cmd.name.equals("unknown_command")) {
-                cmd.args = new String[]{
-                        REG_NAMES[getSubBits(data, 15, 19)],
-                        REG_NAMES[getSubBits(data, 20, 24)],
-                        getSymbol(addr + getBimm12(data), symtab, tagged)
-                };
-            }
-        } else if (opcode == 0x19 && func3 == 0) { // jalr
-            cmd.name = "jalr";
-            cmd.args = new String[]{
-                    REG_NAMES[getSubBits(data, 7, 11)],
-                    REG_NAMES[getSubBits(data, 15, 19)],
-                    Integer.toString(getIimm12(data))
-            };
-        } else if (opcode == 0x1b) { // jal
-            cmd.name = "jal";
-            cmd.args = new String[]{
-                    REG_NAMES[getSubBits(data, 7, 11)],
-                    getSymbol(addr + getJimm20(data), symtab, tagged)
-            };
-        } else if (opcode == 0x0d) { // lui
-            cmd.name = "lui";
-            cmd.args = new String[]{
-                    REG_NAMES[getSubBits(data, 7, 11)],
-                    Integer.toString(getUimm20(data))
-            };
-        } else if (opcode == 0x05) { // auipc
-            cmd.name = "auipc";
-            cmd.args = new String[]{
-                    REG_NAMES[getSubBits(data, 7, 11)],
-                    Integer.toString(getUimm20(data))
-            };
-        } else if (opcode == 0x04) { // integer register-immediate
-            cmd.name = switch (func3) {
-                case 0 -> "addi";
-                case 2 -> "slti";
-                case 3 -> "sltiu";
-                case 4 -> "xori";
-                case 6 -> "ori";
-                case 7 -> "andi";
-                default -> "unknown_command";
-            };
-            if (!cmd.name.equals("unknown_command")) {
-                cmd.args = new String[]{
-                        REG_NAMES[getSubBits(data, 7, 11)],
-                        REG_NAMES[getSubBits(data, 15, 19)],
-                        Integer.toString(getIimm12(data))
-                };
-            }
-            if (func3 == 1 || func3 == 5) {
-                if (func3 == 1) {
-                    cmd.name = "slli";
-                } else if (getSubBits(data, 25, 31) == 0) {
-                    cmd.name = "srli";
-                } else {
-                    cmd.name = "srai";
-                }
-                String rd = REG_NAMES[getSubBits(data, 7, 11)];
-                String rs = REG_NAMES[getSubBits(data, 15, 19)];
-                cmd.args = new String[]{
-                        rd,
-                        rs,
-                        Integer.toString(getSubBits(data, 20, 24))
-                };
-            }
-        } else if (opcode == 0x0c) { // integer register-register
-            int func7 = getSubBits(data, 25, 31);
-            cmd.name = switch (func3) {
-                case 0 -> switch (func7) {
-                    case 0 -> "add";
-                    case 1 -> "mul";
-                    case 32 -> "sub";
-                    default -> "unknown_command";
-                };
-                case 1 -> switch (func7) {
-                    case 0 -> "sll";
-                    case 1 -> "mulh";
-                    default -> "unknown_command";
-                };
-                case 2 -> switch (func7) {
-                    case 0 -> "slt";
-                    case 1 -> "mulhsu";
-                    default -> "unknown_command";
-                };
-                case 3 -> switch (func7) {
-                    case 0 -> "sltu";
-                    case 1 -> "mulhu";
-                    default -> "unknown_command";
-                };
-                case 4 -> switch (func7) {
-                    case 0 -> "xor";
-                    case 1 -> "div";
-                    default -> "unknown_command";
-                };
-                case 5 -> switch (func7) {
-                    case 0 -> "srl";
-                    case 1 -> "divu";
-                    case 32 -> "sra";
-                    default -> "unknown_command";
-                };
-                case 6 -> switch (func7) {
-                    case 0 -> "or";
-                    case 1 -> "rem";
-                    default -> "unknown_command";
-                };
-                case 7 -> switch (func7) {
-                    case 0 -> "and";
-                    case 1 -> "remu";
-                    default -> "unknown_command";
-                };
-                default -> "unknown_command";
-            };
-            if (!cmd.name.equals("unknown_command")) {
-                cmd.args = new String[]{
-                        REG_NAMES[getSubBits(data, 7, 11)],
-                        REG_NAMES[getSubBits(data, 15, 19)],
-                        REG_NAMES[getSubBits(data, 20, 24)],
-                };
-            }
-        } else if (opcode == 0x00) { // load
-            cmd.name = switch (func3) {
-                case 0 -> "lb";
-                case 1 -> "lh";
-                case 2 -> "lw";
-                case 4 -> "lbu";
-                case 5 -> "lhu";
-                default -> "unknown_command";
-            };
-            if (!cmd.name.equals("unknown_command")) {
-                cmd.args = new String[]{
-                        REG_NAMES[getSubBits(data, 7, 11)],
-                        String.format("%d(%s)", getIimm12(data), REG_NAMES[getSubBits(data, 15, 19)])
-                };
-            }
-        } else if (opcode == 0x08) { // store
-            cmd.name = switch (func3) {
-                case 0 -> "sb";
-                case 1 -> "sh";
-                case 2 -> "sw";
-                default -> "unknown_command";
-            };
-            if (!cmd.name.equals("unknown_command")) {
-                cmd.args = new String[]{
-                        REG_NAMES[getSubBits(data, 20, 24)],
-                        String.format("%d(%s)", getSimm12(data), REG_NAMES[getSubBits(data, 15, 19)])
-                };
-            }
-        } else if (opcode == 0x03 && (func3 == 0 || func3 == 1)) { // fence, fence.i
-            if (func3 == 0) {
-                cmd.name = "fence";
-                cmd.args = new String[]{
-                        convertFenceArgument(getSubBits(data, 24, 27)),
-                        convertFenceArgument(getSubBits(data, 20, 23))
-                };
-            } else {
-                cmd.name = "fence.i";
-            }
-        } else if (opcode == 0x1c) { // system commands
-            if (func3 == 0) {
-                int funct12 = getSubBits(data, 20, 31);
-                switch (funct12) {
-                    case 0 -> cmd.name = "ecall";
-                    case 1 -> cmd.name = "ebreak";
-                }
-            } else {
-                cmd.name = switch (func3) {
-                    case 1 -> "csrrw";
-                    case 2 -> "csrrs";
-                    case 3 -> "csrrc";
-                    case 5 -> "csrrwi";
-                    case 6 -> "csrrsi";
-                    case 7 -> "csrrci";
-                    default -> "";
-                };
-                cmd.args = new String[]{
-                        REG_NAMES[getSubBits(data, 7, 11)],
-                        Integer.toString(getSubBits(data, 20, 31)),
-                        REG_NAMES[getSubBits(data, 15, 19)]
-                };
-            }
+        // conditional branches
+        put(table, 0x18, 0, Mnemonic.BEQ);
+        put(table, 0x18, 1, Mnemonic.BNE);
+        put(table, 0x18, 4, Mnemonic.BLT);
+        put(table, 0x18, 5, Mnemonic.BGE);
+        put(table, 0x18, 6, Mnemonic.BLTU);
+        put(table, 0x18, 7, Mnemonic.BGEU);
+        put(table, 0x19, 0, Mnemonic.JALR);
+        for (int func3 = 0; func3 < 8; func3++) {
+            put(table, 0x1b, func3, Mnemonic.JAL);
+            put(table, 0x0d, func3, Mnemonic.LUI);
+            put(table, 0x05, func3, Mnemonic.AUIPC);
         }
-        if (cmd.name.isEmpty()) {
-            cmd.name = "unknown_command";
-            cmd.args = new String[]{};
+        // integer register-immediate
+        put(table, 0x04, 0, Mnemonic.ADDI);
+        put(table, 0x04, 1, Mnemonic.SLLI);
+        put(table, 0x04, 2, Mnemonic.SLTI);
+        put(table, 0x04, 3, Mnemonic.SLTIU);
+        put(table, 0x04, 4, Mnemonic.XORI);
+        put(table, 0x04, 5, Mnemonic.SRAI);
+        put(table, 0x04, 5, 0, Mnemonic.SRLI);
+        put(table, 0x04, 6, Mnemonic.ORI);
+        put(table, 0x04, 7, Mnemonic.ANDI);
+        // integer register-register
+        put(table, 0x0c, 0, 0, Mnemonic.ADD);
+        put(table, 0x0c, 0, 1, Mnemonic.MUL);
+        put(table, 0x0c, 0, 32, Mnemonic.SUB);
+        put(table, 0x0c, 1, 0, Mnemonic.SLL);
+        put(table, 0x0c, 1, 1, Mnemonic.MULH);
+        put(table, 0x0c, 2, 0, Mnemonic.SLT);
+        put(table, 0x0c, 2, 1, Mnemonic.MULHSU);
+        put(table, 0x0c, 3, 0, Mnemonic.SLTU);
+        put(table, 0x0c, 3, 1, Mnemonic.MULHU);
+        put(table, 0x0c, 4, 0, Mnemonic.XOR);
+        put(table, 0x0c, 4, 1, Mnemonic.DIV);
+        put(table, 0x0c, 5, 0, Mnemonic.SRL);
+        put(table, 0x0c, 5, 1, Mnemonic.DIVU);
+        put(table, 0x0c, 5, 32, Mnemonic.SRA);
+        put(table, 0x0c, 6, 0, Mnemonic.OR);
+        put(table, 0x0c, 6, 1, Mnemonic.REM);
+        put(table, 0x0c, 7, 0, Mnemonic.AND);
+        put(table, 0x0c, 7, 1, Mnemonic.REMU);
+        // load
+        put(table, 0x00, 0, Mnemonic.LB);
+        put(table, 0x00, 1, Mnemonic.LH);
+        put(table, 0x00, 2, Mnemonic.LW);
+        put(table, 0x00, 4, Mnemonic.LBU);
+        put(table, 0x00, 5, Mnemonic.LHU);
+        // store
+        put(table, 0x08, 0, Mnemonic.SB);
+        put(table, 0x08, 1, Mnemonic.SH);
+        put(table, 0x08, 2, Mnemonic.SW);
+        // fence, fence.i
+        put(table, 0x03, 0, Mnemonic.FENCE);
+        put(table, 0x03, 1, Mnemonic.FENCE_I);
+        // system commands, ebreak is told apart from ecall by rs2 while decoding
+        put(table, 0x1c, 0, 0, Mnemonic.ECALL);
+        put(table, 0x1c, 1, Mnemonic.CSRRW);
+        put(table, 0x1c, 2, Mnemonic.CSRRS);
+        put(table, 0x1c, 3, Mnemonic.CSRRC);
+        put(table, 0x1c, 5, Mnemonic.CSRRWI);
+        put(table, 0x1c, 6, Mnemonic.CSRRSI);
+        put(table, 0x1c, 7, Mnemonic.CSRRCI);
+        return table;
+    }
+
+    /**
+     * Returns the mnemonic of a 32-bit command without decoding its operands.
+     */
+    static Mnemonic uncompressedMnemonic(int data) {
+        Mnemonic mnemonic = UNCOMPRESSED_TABLE[uncompressedIndex(
+                getSubBits(data, 2, 6), getSubBits(data, 12, 14), getSubBits(data, 25, 31)
+        )];
+        if (mnemonic == Mnemonic.ECALL) {
+            int rs2 = getSubBits(data, 20, 24);
+            if (rs2 != 0) {
+                mnemonic = rs2 == 1 ? Mnemonic.EBREAK : Mnemonic.UNKNOWN;
+            }
         }
-        return cmd;
+        return mnemonic;
+    }
+
+    private static void parseUncompressedCmd(int data, long addr, DecodedText text) {
+        Mnemonic mnemonic = uncompressedMnemonic(data);
+        int rd = getSubBits(data, 7, 11);
+        int rs1 = getSubBits(data, 15, 19);
+        int rs2 = getSubBits(data, 20, 24);
+        int imm = switch (mnemonic.format) {
+            case RD_RS1_IMM, RD_MEM -> getIimm12(data);
+            case RD_RS1_SHAMT -> rs2;
+            case RD_IMM -> getUimm20(data);
+            case RS2_MEM -> getSimm12(data);
+            case RS1_RS2_TARGET -> getBimm12(data);
+            case RD_TARGET -> getJimm20(data);
+            case FENCE -> getSubBits(data, 20, 27);
+            case RD_CSR_RS1 -> getSubBits(data, 20, 31);
+            default -> 0;
+        };
+        text.add(addr, mnemonic, rd, rs1, rs2, imm);
     }
 
     private static int getNzimm6(int a) {
@@ -329,52 +208,67 @@ public class Disasm {
         return res;
     }
 
-    private static AsmCommand parseCompressedCmd(int data, long addr, Map<Long, String> symtab, Set<Long> tagged) {
-        AsmCommand cmd = new AsmCommand();
-        cmd.address = addr;
+    private final static Mnemonic[] MNEMONICS = Mnemonic.values();
+
+    /**
+     * Every 16-bit command decoded once into a template packed as
+     * imm (32 bits) | mnemonic (17 bits) | rd (5 bits) | rs1 (5 bits) | rs2 (5 bits).
+     * Targets of jumps and branches are stored as offsets relative to the command address.
+     * The holder is initialized on the first compressed command: filling the table costs about 65 ms
+     * in a cold JVM, so images without RVC code don't pay for it.
+     */
+    private static class CompressedTable {
+        private final static long[] TABLE = new long[1 << 16];
+
+        static {
+            for (int data = 0; data < TABLE.length; data++) {
+                TABLE[data] = decodeCompressed(data);
+            }
+        }
+    }
+
+    private static long pack(Mnemonic mnemonic, int rd, int rs1, int rs2, int imm) {
+        return ((long) imm << 32) | ((long) mnemonic.ordinal() << 15) | (rd << 10) | (rs1 << 5) | rs2;
+    }
+
+    private static long pack(Mnemonic mnemonic) {
+        return pack(mnemonic, 0, 0, 0, 0);
+    }
 
+    private static long decodeCompressed(int data) {
         if (data == 0) {
-            cmd.name = "illegal";
-            return cmd;
+            return pack(Mnemonic.ILLEGAL);
         }
 
         int func3 = getSubBits(data, 13, 15);
         int opcode = getSubBits(data, 0, 1);
+        // registers of CIW, CL, CS, CA and CB formats are x8-x15
+        int rdRvc = 8 + getSubBits(data, 2, 4);
+        int rs1Rvc = 8 + getSubBits(data, 7, 9);
+        int rd = getSubBits(data, 7, 11);
+        int rs2 = getSubBits(data, 2, 6);
 
         if (opcode == 0) {
             int imm;
             switch (func3) {
                 case 0 -> {
-                    cmd.name = "c.addi4spn";
                     imm = (getSubBits(data, 7, 10) << 6)
                             | (getSubBits(data, 11, 12) << 4)
                             | (getSubBits(data, 5, 5) << 3)
                             | (getSubBits(data, 6, 6) << 2);
-                    cmd.args = new String[]{
-                            REG_NAMES_RVC[getSubBits(data, 2, 4)],
-                            "sp",
-                            Integer.toString(imm)
-                    };
+                    return pack(Mnemonic.C_ADDI4SPN, rdRvc, 2, 0, imm);
                 }
                 case 2 -> {
-                    cmd.name = "c.lw";
                     imm = (getSubBits(data, 5, 5) << 6)
                             | (getSubBits(data, 10, 12) << 3)
                             | (getSubBits(data, 6, 6) << 2);
-                    cmd.args = new String[]{
-                            REG_NAMES_RVC[getSubBits(data, 2, 4)],
-                            String.format("%d(%s)", imm, REG_NAMES_RVC[getSubBits(data, 7, 9)])
-                    };
+                    return pack(Mnemonic.C_LW, rdRvc, rs1Rvc, 0, imm);
                 }
                 case 6 -> {
-                    cmd.name = "c.sw";
                     imm = (getSubBits(data, 5, 5) << 6)
                             | (getSubBits(data, 10, 12) << 3)
                             | (getSubBits(data, 6, 6) << 2);
-                    cmd.args = new String[]{
-                            REG_NAMES_RVC[getSubBits(data, 2, 4)],
-                            String.format("%d(%s)", imm, REG_NAMES_RVC[getSubBits(data, 7, 9)])
-                    };
+                    return pack(Mnemonic.C_SW, 0, rs1Rvc, rdRvc, imm);
                 }
             }
         } else if (opcode == 1) {
@@ -382,32 +276,18 @@ public class Disasm {
             switch (func3) {
                 case 0 -> {
                     if (getSubBits(data, 2, 15) == 0) {
-                        cmd.name = "c.nop";
-                    } else {
-                        cmd.name = "c.addi";
-                        cmd.args = new String[]{
-                                REG_NAMES[getSubBits(data, 7, 11)],
-                                Integer.toString(getNzimm6(data))
-                        };
+                        return pack(Mnemonic.C_NOP);
                     }
+                    return pack(Mnemonic.C_ADDI, rd, 0, 0, getNzimm6(data));
                 }
                 case 1 -> {
-                    cmd.name = "c.jal";
-                    cmd.args = new String[]{
-                            getSymbol(addr + getImm11(data), symtab, tagged)
-                    };
+                    return pack(Mnemonic.C_JAL, 0, 0, 0, getImm11(data));
                 }
                 case 2 -> {
-                    cmd.name = "c.li";
-                    cmd.args = new String[]{
-                            REG_NAMES[getSubBits(data, 7, 11)],
-                            Integer.toString(getNzimm6(data))
-                    };
+                    return pack(Mnemonic.C_LI, rd, 0, 0, getNzimm6(data));
                 }
                 case 3 -> {
-                    int rd = getSubBits(data, 7, 11);
                     if (rd == 2) {
-                        cmd.name = "c.addi16sp";
                         imm = (getSubBits(data, 3, 4) << 7)
                                 | (getSubBits(data, 5, 5) << 6)
                                 | (getSubBits(data, 2, 2) << 5)
@@ -415,171 +295,235 @@ public class Disasm {
                         if (getSubBits(data, 12, 12) == 1) {
                             imm -= (1 << 9);
                         }
-                        cmd.args = new String[]{
-                                "sp", "sp",
-                                Integer.toString(imm)
-                        };
-                    } else {
-                        cmd.name = "c.lui";
-                        imm = getNzimm6(data) << 12;
-                        cmd.args = new String[]{
-                                REG_NAMES[rd],
-                                Integer.toString(imm)
-                        };
+                        return pack(Mnemonic.C_ADDI16SP, 2, 2, 0, imm);
                     }
+                    return pack(Mnemonic.C_LUI, rd, 0, 0, getNzimm6(data) << 12);
                 }
                 case 4 -> {
                     int func2 = getSubBits(data, 10, 11);
                     switch (func2) {
                         case 0 -> {
-                            cmd.name = "c.srli";
-                            cmd.args = new String[]{
-                                    REG_NAMES_RVC[getSubBits(data, 7, 9)],
-                                    Integer.toString(getNzimm6(data))
-                            };
+                            return pack(Mnemonic.C_SRLI, rs1Rvc, 0, 0, getNzimm6(data));
                         }
                         case 1 -> {
-                            cmd.name = "c.srai";
-                            cmd.args = new String[]{
-                                    REG_NAMES_RVC[getSubBits(data, 7, 9)],
-                                    Integer.toString(getNzimm6(data))
-                            };
+                            return pack(Mnemonic.C_SRAI, rs1Rvc, 0, 0, getNzimm6(data));
                         }
                         case 2 -> {
-                            cmd.name = "c.andi";
-                            cmd.args = new String[]{
-                                    REG_NAMES_RVC[getSubBits(data, 7, 9)],
-                                    Integer.toString(getNzimm6(data))
-                            };
+                            return pack(Mnemonic.C_ANDI, rs1Rvc, 0, 0, getNzimm6(data));
                         }
-                        case 3 -> {
-                            cmd.name = switch (getSubBits(data, 5, 6)) {
-                                case 0 -> "c.sub";
-                                case 1 -> "c.xor";
-                                case 2 -> "c.or";
-                                case 3 -> "c.and";
-                                default -> "";
-                            };
-                            cmd.args = new String[]{
-                                    REG_NAMES_RVC[getSubBits(data, 7, 9)],
-                                    REG_NAMES_RVC[getSubBits(data, 2, 4)]
+                        default -> {
+                            Mnemonic mnemonic = switch (getSubBits(data, 5, 6)) {
+                                case 0 -> Mnemonic.C_SUB;
+                                case 1 -> Mnemonic.C_XOR;
+                                case 2 -> Mnemonic.C_OR;
+                                default -> Mnemonic.C_AND;
                             };
+                            return pack(mnemonic, rs1Rvc, 0, rdRvc, 0);
                         }
                     }
                 }
                 case 5 -> {
-                    cmd.name = "c.j";
-                    cmd.args = new String[]{
-                            getSymbol(addr + getImm11(data), symtab, tagged)
-                    };
+                    return pack(Mnemonic.C_J, 0, 0, 0, getImm11(data));
                 }
                 case 6 -> {
-                    cmd.name = "c.beqz";
-                    cmd.args = new String[]{
-                            REG_NAMES_RVC[getSubBits(data, 7, 9)],
-                            getSymbol(addr + getImm8(data), symtab, tagged)
-                    };
+                    return pack(Mnemonic.C_BEQZ, 0, rs1Rvc, 0, getImm8(data));
                 }
                 case 7 -> {
-                    cmd.name = "c.bnez";
-                    cmd.args = new String[]{
-                            REG_NAMES_RVC[getSubBits(data, 7, 9)],
-                            getSymbol(addr + getImm8(data), symtab, tagged)
-                    };
+                    return pack(Mnemonic.C_BNEZ, 0, rs1Rvc, 0, getImm8(data));
                 }
             }
         } else if (opcode == 2) {
             switch (func3) {
                 case 0 -> {
-                    cmd.name = "c.slli";
-                    cmd.args = new String[]{
-                            REG_NAMES[getSubBits(data, 7, 11)],
-                            Integer.toString(getNzimm6(data))
-                    };
+                    return pack(Mnemonic.C_SLLI, rd, 0, 0, getNzimm6(data));
                 }
                 case 2 -> {
-                    cmd.name = "c.lwsp";
                     int imm = (getSubBits(data, 2, 3) << 6)
                             | (getSubBits(data, 12, 12) << 5)
                             | (getSubBits(data, 4, 6) << 2);
-                    cmd.args = new String[]{
-                            REG_NAMES[getSubBits(data, 7, 11)],
-                            String.format("%d(sp)", imm)
-                    };
+                    return pack(Mnemonic.C_LWSP, rd, 2, 0, imm);
                 }
                 case 4 -> {
-                    int rs1 = getSubBits(data, 7, 11);
-                    int rs2 = getSubBits(data, 2, 6);
                     if (getSubBits(data, 12, 12) == 0) {
                         if (rs2 == 0) {
-                            cmd.name = "c.jr";
-                            cmd.args = new String[]{
-                                    REG_NAMES[rs1]
-                            };
-                        } else {
-                            cmd.name = "c.mv";
-                            cmd.args = new String[]{
-                                    REG_NAMES[rs1],
-                                    REG_NAMES[rs2]
-                            };
-                        }
-                    } else {
-                        if (rs1 == 0 && rs2 == 0) {
-                            cmd.name = "c.ebreak";
-                        } else if (rs2 == 0) {
-                            cmd.name = "c.jalr";
-                            cmd.args = new String[]{
-                                    REG_NAMES[rs1]
-                            };
-                        } else {
-                            cmd.name = "c.add";
-                            cmd.args = new String[]{
-                                    REG_NAMES[rs1],
-                                    REG_NAMES[rs2]
-                            };
+                            return pack(Mnemonic.C_JR, 0, rd, 0, 0);
                         }
+                        return pack(Mnemonic.C_MV, rd, 0, rs2, 0);
+                    }
+                    if (rd == 0 && rs2 == 0) {
+                        return pack(Mnemonic.C_EBREAK);
+                    } else if (rs2 == 0) {
+                        return pack(Mnemonic.C_JALR, 0, rd, 0, 0);
                     }
+                    return pack(Mnemonic.C_ADD, rd, 0, rs2, 0);
                 }
                 case 6 -> {
-                    cmd.name = "c.swsp";
                     int imm = (getSubBits(data, 7, 8) << 6)
                             | (getSubBits(data, 9, 12) << 2);
-                    cmd.args = new String[]{
-                            REG_NAMES[getSubBits(data, 2, 6)],
-                            String.format("%d(sp)", imm)
-                    };
+                    return pack(Mnemonic.C_SWSP, 0, 2, rs2, imm);
                 }
             }
         }
-        if (cmd.name.isEmpty()) {
-            cmd.name = "unknown_command";
-            cmd.args = new String[]{};
-        }
+        return pack(Mnemonic.UNKNOWN);
+    }
 
-        return cmd;
+    /**
+     * Returns the mnemonic of a 16-bit command without decoding its operands.
+     */
+    static Mnemonic compressedMnemonic(int data) {
+        return MNEMONICS[(int) (CompressedTable.TABLE[data] >>> 15) & 0x1ffff];
     }
 
-    public static List<AsmCommand> disasm(byte[] file, ElfSectionInfo textHeader, Map<Long, String> symtab) {
-        List<AsmCommand> commands = new ArrayList<>();
-        Set<Long> taggedLines = new HashSet<>();
-        int pos = (int) textHeader.sh_offset;
-        while (pos < textHeader.sh_offset + textHeader.sh_size) {
+    private static void parseCompressedCmd(int data, long addr, DecodedText text) {
+        long template = CompressedTable.TABLE[data];
+        text.add(
+                addr,
+                MNEMONICS[(int) (template >>> 15) & 0x1ffff],
+                (int) (template >>> 10) & 0x1f,
+                (int) (template >>> 5) & 0x1f,
+                (int) template & 0x1f,
+                (int) (template >>> 32)
+        );
+    }
+
+    /**
+     * Decodes commands starting in [from, to) and returns the offset after the last one.
+     */
+    static int disasmRange(ByteBuffer file, ElfSectionInfo textHeader, int from, int to, DecodedText text) {
+        int pos = from;
+        while (pos < to) {
             long address = pos - textHeader.sh_offset + textHeader.sh_addr; // address = pc
-            String symbol = symtab.getOrDefault(address, "");
-            if ((file[pos] & 0x3) == 3) {
-                commands.add(parseUncompressedCmd(toInt(readBytes(file, pos, 4)), address, symtab, taggedLines));
+            if ((file.get(pos) & 0x3) == 3) {
+                parseUncompressedCmd(ElfParser.getInt(file, pos), address, text);
                 pos += 4;
             } else {
-                commands.add(parseCompressedCmd(toInt(readBytes(file, pos, 2)), address, symtab, taggedLines));
+                parseCompressedCmd(ElfParser.getUnsignedShort(file, pos), address, text);
                 pos += 2;
             }
-            commands.get(commands.size() - 1).symbol = symbol;
         }
-        for (var cmd : commands) {
-            if (cmd.symbol.isEmpty() && taggedLines.contains(cmd.address)) {
-                cmd.symbol = String.format("LOC_%05x", cmd.address);
+        return pos;
+    }
+
+    public static DecodedText disasm(ByteBuffer file, ElfSectionInfo textHeader, SymbolIndex symtab) {
+        Metrics.Span span = Metrics.begin(Metrics.Stage.DISASM);
+        // a command takes 2 or 4 bytes, start from the size of mixed code and grow if needed
+        DecodedText text = new DecodedText(symtab, (int) (textHeader.sh_size / 3));
+        int start = (int) textHeader.sh_offset;
+        disasmRange(file, textHeader, start, (int) (start + textHeader.sh_size), text);
+        Metrics.endDisasm(span, file, textHeader, text);
+        return text;
+    }
+
+    /**
+     * Same as {@link #disasm(ByteBuffer, ElfSectionInfo, SymbolIndex)}, but chunks of .text are decoded
+     * on a ForkJoinPool with the given parallelism and merged in address order.
+     * Chunk bounds and sizes come from {@link CommandBoundaries} of the section.
+     */
+    public static DecodedText disasm(ByteBuffer file, ElfSectionInfo textHeader, SymbolIndex symtab,
+                                     int threads) {
+        if (threads <= 1) {
+            return disasm(file, textHeader, symtab);
+        }
+        Metrics.Span span = Metrics.begin(Metrics.Stage.DISASM);
+        int chunkSize = (int) Math.max(1 << 16, textHeader.sh_size / (threads * 4L));
+        CommandBoundaries boundaries = CommandBoundaries.scan(file, textHeader);
+        List<Integer> bounds = boundaries.chunkBounds(chunkSize);
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<ForkJoinTask<DecodedText>> tasks = new ArrayList<>();
+            for (int i = 0; i + 1 < bounds.size(); i++) {
+                int from = bounds.get(i);
+                int to = bounds.get(i + 1);
+                int capacity = chunkCapacity(boundaries, from, to);
+                tasks.add(pool.submit(() -> decodeChunk(file, textHeader, from, to, capacity, symtab)));
+            }
+            List<DecodedText> chunks = new ArrayList<>();
+            for (var task : tasks) {
+                chunks.add(task.join());
+            }
+            DecodedText text = DecodedText.concat(symtab, chunks);
+            Metrics.endDisasm(span, file, textHeader, text);
+            return text;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Decodes the given sections, which must be in address order and not overlap, concurrently with the given
+     * parallelism: a task per section, and sections larger than a fair share of the work split into chunks
+     * like {@link #disasm(ByteBuffer, ElfSectionInfo, SymbolIndex, int)} does. Commands of all sections
+     * are merged in address order, so labels and targets are shared across sections.
+     */
+    public static DecodedText disasmSections(ByteBuffer file, List<ElfSectionInfo> sections, SymbolIndex symtab,
+                                             int threads) {
+        Metrics.Span span = Metrics.begin(Metrics.Stage.DISASM);
+        long totalSize = 0;
+        for (var section : sections) {
+            totalSize += section.sh_size;
+        }
+        int chunkSize = (int) Math.max(1 << 16, totalSize / (threads * 4L));
+        List<ElfSectionInfo> chunkSections = new ArrayList<>();
+        List<Integer> chunkBounds = new ArrayList<>();
+        List<Integer> capacities = new ArrayList<>();
+        for (var section : sections) {
+            if (section.sh_size > chunkSize) {
+                CommandBoundaries boundaries = CommandBoundaries.scan(file, section);
+                List<Integer> bounds = boundaries.chunkBounds(chunkSize);
+                for (int i = 0; i + 1 < bounds.size(); i++) {
+                    chunkSections.add(section);
+                    chunkBounds.add(bounds.get(i));
+                    chunkBounds.add(bounds.get(i + 1));
+                    capacities.add(chunkCapacity(boundaries, bounds.get(i), bounds.get(i + 1)));
+                }
+            } else {
+                chunkSections.add(section);
+                chunkBounds.add((int) section.sh_offset);
+                chunkBounds.add((int) (section.sh_offset + section.sh_size));
+                capacities.add((int) (section.sh_size / 3));
             }
         }
-        return commands;
+        List<DecodedText> chunks = new ArrayList<>();
+        if (threads <= 1) {
+            for (int i = 0; i < chunkSections.size(); i++) {
+                chunks.add(decodeChunk(file, chunkSections.get(i), chunkBounds.get(2 * i), chunkBounds.get(2 * i + 1),
+                        capacities.get(i), symtab));
+            }
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                List<ForkJoinTask<DecodedText>> tasks = new ArrayList<>();
+                for (int i = 0; i < chunkSections.size(); i++) {
+                    ElfSectionInfo section = chunkSections.get(i);
+                    int from = chunkBounds.get(2 * i);
+                    int to = chunkBounds.get(2 * i + 1);
+                    int capacity = capacities.get(i);
+                    tasks.add(pool.submit(() -> decodeChunk(file, section, from, to, capacity, symtab)));
+                }
+                for (var task : tasks) {
+                    chunks.add(task.join());
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+        DecodedText text = DecodedText.concat(symtab, chunks);
+        Metrics.endDisasm(span, file, sections, text);
+        return text;
+    }
+
+    /**
+     * Returns the number of commands starting between the file offsets, so that chunks never grow.
+     */
+    private static int chunkCapacity(CommandBoundaries boundaries, int from, int to) {
+        long delta = boundaries.section.sh_addr - boundaries.section.sh_offset;
+        return boundaries.rank(to + delta) - boundaries.rank(from + delta);
+    }
+
+    private static DecodedText decodeChunk(ByteBuffer file, ElfSectionInfo section, int from, int to, int capacity,
+                                           SymbolIndex symtab) {
+        DecodedText chunk = new DecodedText(symtab, capacity);
+        disasmRange(file, section, from, to, chunk);
+        return chunk;
     }
 }
@@ -0,0 +1,188 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Disassembles a single function or address range of .text without decoding the rest of the section.
+ * The first query reads the symbol table directly: the function is found by comparing names in .strtab and
+ * only symbols the slice refers to are named. From the second query on functions and symbols are indexed,
+ * after that a lookup is a hash map access.
+ * LOC_ labels are put only on commands of the slice that are targets of commands of the same slice.
+ */
+public class DisasmQuery {
+    private final ElfFile elf;
+    private final long textStart;
+    private final long textEnd;
+    private int queries = 0;
+    // FUNC symbols of the whole file by address, built with the function index
+    private SymbolIndex labels = null;
+    // function of ElfSymtab#functions by the name of every FUNC symbol starting it
+    private Map<String, Integer> functions = null;
+    private ElfFunctions functionTable;
+    private CommandBoundaries boundaries = null;
+
+    public DisasmQuery(ElfFile elf) {
+        this.elf = elf;
+        this.textStart = elf.textHeader.sh_addr;
+        this.textEnd = textStart + elf.textHeader.sh_size;
+    }
+
+    private void nextQuery() {
+        if (functions == null && queries++ > 0) {
+            indexFunctions();
+        }
+    }
+
+    private void indexFunctions() {
+        ElfSymtab symtab = elf.symtab;
+        functionTable = symtab.functions(textStart, textEnd);
+        functions = new HashMap<>();
+        for (int i = 0; i < symtab.size(); i++) {
+            if (isFunction(symtab, i)) {
+                int f = Arrays.binarySearch(functionTable.starts, 0, functionTable.count, symtab.getValue(i));
+                if (f >= 0) {
+                    functions.putIfAbsent(symtab.getName(i), f);
+                }
+            }
+        }
+        labels = Utils.symtabToIndex(symtab);
+    }
+
+    private boolean isFunction(ElfSymtab symtab, int i) {
+        long value = symtab.getValue(i);
+        return symtab.getType(i) == ElfSymtab.STT_FUNC && value >= textStart && value < textEnd;
+    }
+
+    /**
+     * Returns the start and the end of the FUNC symbol with the given name or null if there is no such symbol.
+     */
+    private long[] findFunction(String name) {
+        nextQuery();
+        return functions != null ? indexedFunction(name) : scanFunction(name);
+    }
+
+    private long[] indexedFunction(String name) {
+        Integer f = functions.get(name);
+        return f == null ? null : new long[]{functionTable.starts[f], functionTable.ends[f]};
+    }
+
+    /**
+     * Finds the function the way {@link #indexFunctions} does with two passes over the symbol table.
+     * If an earlier function overlaps it, which of them is kept depends on all the others, so they are indexed.
+     */
+    private long[] scanFunction(String name) {
+        ElfSymtab symtab = elf.symtab;
+        int symbol = -1;
+        for (int i = 0; i < symtab.size() && symbol < 0; i++) {
+            if (isFunction(symtab, i) && symtab.hasName(i, name)) {
+                symbol = i;
+            }
+        }
+        if (symbol < 0) {
+            return null;
+        }
+        long start = symtab.getValue(symbol);
+        long next = textEnd;
+        // the first symbol at the start gives the size, like in ElfSymtab#functions
+        int first = -1;
+        for (int i = 0; i < symtab.size(); i++) {
+            if (!isFunction(symtab, i)) {
+                continue;
+            }
+            long value = symtab.getValue(i);
+            if (value == start && first < 0) {
+                first = i;
+            } else if (value > start) {
+                next = Math.min(next, value);
+            } else if (value < start && value + symtab.getSize(i) > start) {
+                indexFunctions();
+                return indexedFunction(name);
+            }
+        }
+        long size = symtab.getSize(first);
+        return new long[]{start, size > 0 ? Math.min(start + size, textEnd) : next};
+    }
+
+    /**
+     * Returns the address of the FUNC symbol with the given name or -1 if there is no such symbol.
+     */
+    public long functionAddress(String name) {
+        long[] bounds = findFunction(name);
+        return bounds == null ? -1 : bounds[0];
+    }
+
+    /**
+     * Returns commands of the FUNC symbol with the given name or null if there is no such symbol.
+     * Functions are the ones of {@link ElfSymtab#functions} over .text, a symbol starting the same address
+     * as one of them gives the same commands, a symbol overlapping one of them is not found.
+     */
+    public DecodedText function(String name) {
+        long[] bounds = findFunction(name);
+        return bounds == null ? null : decode(bounds[0], bounds[1], -1);
+    }
+
+    /**
+     * Returns commands starting in [start, end), clipped to .text. A start in the middle of a command is moved
+     * to the next command of .text decoded from its first byte. Command boundaries are scanned on the first query.
+     */
+    public DecodedText range(long start, long end) {
+        nextQuery();
+        if (boundaries == null) {
+            boundaries = CommandBoundaries.scan(elf.data, elf.textHeader);
+        }
+        start = boundaries.nextStart(start);
+        return decode(start, end, boundaries.rank(end) - boundaries.rank(start));
+    }
+
+    /**
+     * Decodes commands from the start, which is taken as a command boundary, to the end. The capacity
+     * is the expected number of commands or -1 if it isn't known.
+     */
+    private DecodedText decode(long start, long end, int capacity) {
+        ElfSectionInfo textHeader = elf.textHeader;
+        start = Math.max(start, textStart);
+        end = Math.min(end, textEnd);
+        SymbolIndex symbols = labels != null ? labels : new SymbolIndex();
+        DecodedText text = new DecodedText(symbols, capacity >= 0 ? capacity : (int) Math.max(0, (end - start) / 3));
+        if (start < end) {
+            int from = (int) (start - textHeader.sh_addr + textHeader.sh_offset);
+            int to = (int) (end - textHeader.sh_addr + textHeader.sh_offset);
+            Disasm.disasmRange(elf.data, textHeader, from, to, text);
+        }
+        if (labels == null) {
+            addLabels(text, symbols, start, end);
+        }
+        return text;
+    }
+
+    /**
+     * Names commands in [start, end) and targets of label operands of the text the way
+     * {@link Utils#symtabToIndex} does, with one pass over the symbol table.
+     */
+    private void addLabels(DecodedText text, SymbolIndex symbols, long start, long end) {
+        long[] targets = new long[16];
+        int count = 0;
+        for (int i = 0; i < text.size(); i++) {
+            if (text.getMnemonic(i).format.hasTarget) {
+                if (count == targets.length) {
+                    targets = Arrays.copyOf(targets, count * 2);
+                }
+                targets[count++] = text.getTarget(i);
+            }
+        }
+        Arrays.sort(targets, 0, count);
+        ElfSymtab symtab = elf.symtab;
+        for (int i = 0; i < symtab.size(); i++) {
+            long value = symtab.getValue(i);
+            if (symtab.getType(i) != ElfSymtab.STT_FUNC || value == 0) {
+                continue;
+            }
+            if (value >= start && value < end || Arrays.binarySearch(targets, 0, count, value) >= 0) {
+                String name = symtab.getName(i);
+                if (!name.isEmpty()) {
+                    symbols.put(value, name);
+                }
+            }
+        }
+    }
+}
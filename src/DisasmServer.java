@@ -0,0 +1,193 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resident disassembler listening on loopback HTTP.
+ * {@code POST /disasm} with an elf file as the body returns the same listing as Main writes to the output file.
+ * <p>
+ * Requests are handled by a fixed number of workers with a bounded queue. When the queue is full the accepting
+ * thread handles the request itself, so no new connections are accepted until it is done.
+ * Request bodies are written to temporary files and mapped, like input files, rather than held on the heap.
+ */
+public class DisasmServer {
+    private final static int QUEUE_SIZE = 64;
+    private final static int MAX_PAYLOAD = 256 << 20;
+    private final static long STATS_PERIOD = 60;
+
+    private static ListingCache cache;
+
+    public static void run(Options options) {
+        int workers = options.threads > 1 ? options.threads : Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(QUEUE_SIZE), new ThreadPoolExecutor.CallerRunsPolicy()
+        );
+        try {
+            cache = options.openCache();
+            if (cache != null) {
+                // counters are saved now and then rather than on every request
+                ScheduledExecutorService stats = Executors.newSingleThreadScheduledExecutor(task -> {
+                    Thread thread = new Thread(task, "cache-stats");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                stats.scheduleWithFixedDelay(DisasmServer::saveStats, STATS_PERIOD, STATS_PERIOD, TimeUnit.SECONDS);
+                Runtime.getRuntime().addShutdownHook(new Thread(DisasmServer::saveStats));
+            }
+            HttpServer server = HttpServer.create(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), options.serverPort), QUEUE_SIZE
+            );
+            server.createContext("/disasm", DisasmServer::handle);
+            server.setExecutor(executor);
+            server.start();
+            System.out.println("Listening on http://" + server.getAddress().getHostString() + ":"
+                    + server.getAddress().getPort() + "/disasm");
+        } catch (IOException e) {
+            System.out.println("An error occurred while starting server: " + e.getMessage());
+            executor.shutdown();
+        }
+    }
+
+    private static void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("POST")) {
+                sendError(exchange, 405, "Only POST is supported");
+                return;
+            }
+            Path payload = Files.createTempFile("disasm", ".elf");
+            try {
+                if (!receive(exchange, payload)) {
+                    sendError(exchange, 413, "Elf file is too large");
+                    return;
+                }
+                respond(exchange, payload);
+            } finally {
+                Files.delete(payload);
+            }
+        }
+    }
+
+    /**
+     * Writes the request body to the file, returns false if it is larger than the limit.
+     */
+    private static boolean receive(HttpExchange exchange, Path file) throws IOException {
+        String length = exchange.getRequestHeaders().getFirst("Content-Length");
+        if (length != null && length.matches("\\d{1,18}") && Long.parseLong(length) > MAX_PAYLOAD) {
+            return false;
+        }
+        try (InputStream body = exchange.getRequestBody(); OutputStream out = Files.newOutputStream(file)) {
+            byte[] buffer = new byte[1 << 16];
+            long total = 0;
+            int count;
+            while ((count = body.read(buffer)) > 0) {
+                total += count;
+                if (total > MAX_PAYLOAD) {
+                    return false;
+                }
+                out.write(buffer, 0, count);
+            }
+        }
+        return true;
+    }
+
+    private static void respond(HttpExchange exchange, Path payload) throws IOException {
+        ElfFile elf;
+        FileChannel cachedListing;
+        DecodedText text = null;
+        try {
+            elf = ElfFile.open(payload);
+            cachedListing = cachedListing(elf);
+            if (cachedListing == null) {
+                text = Disasm.disasm(elf.data, elf.textHeader, Utils.symtabToIndex(elf.symtab));
+            }
+        } catch (ElfFormatException e) {
+            sendError(exchange, 400, e.getMessage());
+            return;
+        } catch (NoSuchFileException e) {
+            sendError(exchange, 500, "Cached listing was removed: " + e.getMessage());
+            return;
+        } catch (RuntimeException | AssertionError e) {
+            sendError(exchange, 400, "An error occurred: " + e.getMessage());
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/plain");
+        if (cachedListing != null) {
+            try (FileChannel in = cachedListing;
+                 WritableByteChannel out = Channels.newChannel(exchange.getResponseBody())) {
+                long size = in.size();
+                exchange.sendResponseHeaders(200, size);
+                for (long position = 0; position < size; ) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            }
+            return;
+        }
+        exchange.sendResponseHeaders(200, 0);
+        ListingWriter writer = new ListingWriter(Channels.newChannel(exchange.getResponseBody()));
+        writer.writeListing(text, elf.symtab);
+        writer.close();
+    }
+
+    /**
+     * Returns the listing opened from the cache, rendering and storing it on a miss, or null without a cache.
+     * The entry is open before the response starts, so it can't be evicted half way through.
+     */
+    private static FileChannel cachedListing(ElfFile elf) throws IOException {
+        if (cache == null) {
+            return null;
+        }
+        String key = ListingCache.key(elf);
+        FileChannel entry = cache.open(key);
+        if (entry == null) {
+            DecodedText text = Disasm.disasm(elf.data, elf.textHeader, Utils.symtabToIndex(elf.symtab));
+            Path tmp = Files.createTempFile("disasm", ".txt");
+            try {
+                try (ListingWriter writer = ListingWriter.open(tmp)) {
+                    writer.writeListing(text, elf.symtab);
+                }
+                entry = cache.storeAndOpen(key, tmp);
+            } finally {
+                Files.delete(tmp);
+            }
+            if (entry == null) {
+                throw new NoSuchFileException(key);
+            }
+        }
+        return entry;
+    }
+
+    private static void saveStats() {
+        try {
+            cache.saveStats();
+        } catch (IOException e) {
+            System.out.println("An error occurred while saving cache statistics: " + e.getMessage());
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int code, String message) throws IOException {
+        byte[] body = (message + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(code, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
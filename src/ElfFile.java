@@ -0,0 +1,96 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A checked 32-bit RISC-V elf file with the sections needed for disassembly located.
+ */
+public class ElfFile {
+    public ByteBuffer data;
+    public ElfMetadata header;
+    public List<ElfSectionInfo> sectionHeaders;
+    public ElfSectionInfo textHeader;
+    public ElfSectionInfo symtabHeader;
+    public ElfSectionInfo strtabHeader;
+    public int strtabOffset = -1;
+    public ElfSymtab symtab;
+
+    /**
+     * Returns sections holding code, by the SHF_EXECINSTR flag, in address order.
+     * A section overlapping the previous one is left out.
+     */
+    public List<ElfSectionInfo> executableSections() {
+        List<ElfSectionInfo> sections = new ArrayList<>();
+        for (var section : sectionHeaders) {
+            if (section.isExecutable()) {
+                sections.add(section);
+            }
+        }
+        sections.sort(Comparator.comparingLong(section -> section.sh_addr));
+        List<ElfSectionInfo> res = new ArrayList<>();
+        long end = 0;
+        for (var section : sections) {
+            if (res.isEmpty() || section.sh_addr >= end) {
+                res.add(section);
+                end = section.sh_addr + section.sh_size;
+            }
+        }
+        return res;
+    }
+
+    public static ElfFile open(Path path) throws IOException, ElfFormatException {
+        ByteBuffer data;
+        // only the pages of the sections actually read get loaded
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        return parse(data);
+    }
+
+    public static ElfFile parse(ByteBuffer data) throws ElfFormatException {
+        ElfFile elf = new ElfFile();
+        // ELF32 fields are read directly from the buffer
+        elf.data = data.order(ByteOrder.LITTLE_ENDIAN);
+        if (!ElfParser.checkIfElf(data)) {
+            throw new ElfFormatException("Input must be elf file!");
+        }
+        elf.header = ElfParser.parseHeader(data);
+        if (elf.header.e_machine != 0xf3) {
+            throw new ElfFormatException("Only Risc-V elf files are supported!");
+        }
+        if (elf.header.ei_class != 0x1 || elf.header.e_shentsize != 40) {
+            throw new ElfFormatException("Only 32 bit elf files are supported!");
+        }
+        elf.sectionHeaders = ElfParser.parseSectionHeaders(data, elf.header);
+        for (var section : elf.sectionHeaders) {
+            if (section.name.equals(".text")) {
+                elf.textHeader = section;
+            } else if (section.name.equals(".symtab")) {
+                elf.symtabHeader = section;
+            } else if (section.name.equals(".strtab")) {
+                elf.strtabHeader = section;
+                elf.strtabOffset = (int)section.sh_offset;
+            }
+        }
+        if (elf.textHeader == null) {
+            throw new ElfFormatException("No .text section found in elf file!");
+        }
+        if (elf.symtabHeader == null) {
+            throw new ElfFormatException("No .symtab section found in elf file!");
+        }
+        if (elf.symtabHeader.sh_entsize != 16) {
+            throw new ElfFormatException("Incorrect elf file! SH_ENTSIZE of .symtab must be equal to 16");
+        }
+        if (elf.strtabOffset == -1) {
+            throw new ElfFormatException("No .strtab section found in elf file!");
+        }
+        elf.symtab = ElfParser.parseSymtab(data, elf.symtabHeader, elf.strtabOffset);
+        return elf;
+    }
+}
@@ -0,0 +1,7 @@
+public class ElfFormatException extends Exception {
+    private final static long serialVersionUID = 1L;
+
+    public ElfFormatException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * FUNC symbols inside a range of addresses, in address order, see {@link ElfSymtab#functions}.
+ * Function {@code f} covers {@code [starts[f], ends[f])} and comes from symbol {@code symbols[f]}.
+ */
+public class ElfFunctions {
+    public int count;
+    public long[] starts;
+    public long[] ends;
+    public int[] symbols;
+    public String[] names;
+
+    ElfFunctions(int capacity) {
+        starts = new long[capacity];
+        ends = new long[capacity];
+        symbols = new int[capacity];
+        names = new String[capacity];
+    }
+}
@@ -1,16 +1,20 @@
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 public class ElfParser {
-    public static boolean checkIfElf(byte[] file) {
-        return file.length >= 4 && file[0] == 0x7f
-                && file[1] == 0x45 && file[2] == 0x4c
-                && file[3] == 0x46;
+    public static boolean checkIfElf(ByteBuffer file) {
+        return file.limit() >= 4 && file.get(0) == 0x7f
+                && file.get(1) == 0x45 && file.get(2) == 0x4c
+                && file.get(3) == 0x46;
     }
 
-    private static byte[] readBytes(byte[] file, int offset, int size) {
-        return Arrays.copyOfRange(file, offset, offset + size);
+    static byte[] readBytes(ByteBuffer file, int offset, int size) {
+        // bytes past the end of file are read as zeros
+        byte[] res = new byte[size];
+        file.get(offset, res, 0, Math.min(size, file.limit() - offset));
+        return res;
     }
 
     private static long toLong(byte[] data) {
@@ -21,42 +25,67 @@ public class ElfParser {
         return res;
     }
 
-    public static ElfMetadata parseHeader(byte[] file) {
+    // fields are little-endian whatever the order of the buffer is, only reads crossing the end of file copy bytes
+    static int getInt(ByteBuffer file, int offset) {
+        if (offset + 4 > file.limit()) {
+            return (int) toLong(readBytes(file, offset, 4));
+        }
+        int value = file.getInt(offset);
+        return file.order() == ByteOrder.LITTLE_ENDIAN ? value : Integer.reverseBytes(value);
+    }
+
+    static long getUnsignedInt(ByteBuffer file, int offset) {
+        return Integer.toUnsignedLong(getInt(file, offset));
+    }
+
+    static int getUnsignedShort(ByteBuffer file, int offset) {
+        if (offset + 2 > file.limit()) {
+            return (int) toLong(readBytes(file, offset, 2));
+        }
+        short value = file.getShort(offset);
+        return (file.order() == ByteOrder.LITTLE_ENDIAN ? value : Short.reverseBytes(value)) & 0xffff;
+    }
+
+    public static ElfMetadata parseHeader(ByteBuffer file) {
+        Metrics.Span span = Metrics.begin(Metrics.Stage.PARSE_HEADER);
         ElfMetadata metadata = new ElfMetadata();
-        metadata.ei_class = file[0x04];
-        metadata.ei_data = file[0x05];
+        metadata.ei_class = file.get(0x04);
+        metadata.ei_data = file.get(0x05);
         if (metadata.ei_data != 0x1) {
             throw new AssertionError("Incorrect elf file");
         }
-        metadata.e_machine = toLong(readBytes(file, 0x12, 2));
-        metadata.e_entry = toLong(readBytes(file, 0x18, 4));
-        metadata.e_shoff = toLong(readBytes(file, 0x20, 4));
-        metadata.e_shentsize = toLong(readBytes(file, 0x2E, 2));
-        metadata.e_shnum = toLong(readBytes(file, 0x30, 2));
-        metadata.e_shstrndx = toLong(readBytes(file, 0x32, 2));
+        metadata.e_machine = getUnsignedShort(file, 0x12);
+        metadata.e_entry = getUnsignedInt(file, 0x18);
+        metadata.e_shoff = getUnsignedInt(file, 0x20);
+        metadata.e_shentsize = getUnsignedShort(file, 0x2E);
+        metadata.e_shnum = getUnsignedShort(file, 0x30);
+        metadata.e_shstrndx = getUnsignedShort(file, 0x32);
+        Metrics.end(span, 0x34);
         return metadata;
     }
 
-    private static String getString(byte[] file, int offset, int stringsStartOffset) {
+    private static String getString(ByteBuffer file, int offset, int stringsStartOffset) {
         int pos = stringsStartOffset + offset;
         StringBuilder res = new StringBuilder();
         do {
-            res.append((char)file[pos++]);
-        } while (pos < file.length && file[pos] != 0x0);
+            res.append((char)file.get(pos++));
+        } while (pos < file.limit() && file.get(pos) != 0x0);
         return res.toString();
     }
 
-    public static List<ElfSectionInfo> parseSectionHeaders(byte[] file, ElfMetadata metadata) {
+    public static List<ElfSectionInfo> parseSectionHeaders(ByteBuffer file, ElfMetadata metadata) {
+        Metrics.Span span = Metrics.begin(Metrics.Stage.PARSE_SECTION_HEADERS);
         List<ElfSectionInfo> sections = new ArrayList<>();
         for (int i = 0; i < metadata.e_shnum; i++) {
             ElfSectionInfo section = new ElfSectionInfo();
             int pos = (int)(metadata.e_shoff + metadata.e_shentsize * i);
-            section.sh_name = toLong(readBytes(file, pos, 4));
-            section.sh_type = toLong(readBytes(file, pos + 0x04, 4));
-            section.sh_addr = toLong(readBytes(file, pos + 0x0c, 4));
-            section.sh_offset = toLong(readBytes(file, pos + 0x10, 4));
-            section.sh_size = toLong(readBytes(file, pos + 0x14, 4));
-            section.sh_entsize = toLong(readBytes(file, pos + 0x24, 4));
+            section.sh_name = getUnsignedInt(file, pos);
+            section.sh_type = getUnsignedInt(file, pos + 0x04);
+            section.sh_flags = getUnsignedInt(file, pos + 0x08);
+            section.sh_addr = getUnsignedInt(file, pos + 0x0c);
+            section.sh_offset = getUnsignedInt(file, pos + 0x10);
+            section.sh_size = getUnsignedInt(file, pos + 0x14);
+            section.sh_entsize = getUnsignedInt(file, pos + 0x24);
             sections.add(section);
         }
         int namesOffset = (int)sections.get((int)metadata.e_shstrndx).sh_offset;
@@ -67,25 +96,14 @@ public class ElfParser {
                 section.name = getString(file, (int)section.sh_name, namesOffset);
             }
         }
+        Metrics.end(span, metadata.e_shnum * metadata.e_shentsize);
         return sections;
     }
 
-    public static List<ElfSymtabEntry> parseSymtab(byte[] file, ElfSectionInfo symtabHeader, int strtabOffset) {
-        List<ElfSymtabEntry> symtab = new ArrayList<>();
-        for (int i = 0; i < (int)(symtabHeader.sh_size / symtabHeader.sh_entsize); i++) {
-            ElfSymtabEntry entry = new ElfSymtabEntry();
-            int pos = (int)symtabHeader.sh_offset + 16 * i;
-            entry.st_name = toLong(readBytes(file, pos, 4));
-            entry.st_value = toLong(readBytes(file, pos + 0x4, 4));
-            entry.st_size = toLong(readBytes(file, pos + 0x8, 4));
-            entry.st_info = file[pos + 0xC];
-            entry.st_other = file[pos + 0xD];
-            entry.st_shndex = (int)toLong(readBytes(file, pos + 0xE, 2));
-            if (entry.st_name > 0) {
-                entry.name = getString(file, (int)entry.st_name, strtabOffset);
-            }
-            symtab.add(entry);
-        }
+    public static ElfSymtab parseSymtab(ByteBuffer file, ElfSectionInfo symtabHeader, int strtabOffset) {
+        Metrics.Span span = Metrics.begin(Metrics.Stage.PARSE_SYMTAB);
+        ElfSymtab symtab = new ElfSymtab(file, symtabHeader, strtabOffset);
+        Metrics.end(span, symtabHeader.sh_size);
         return symtab;
     }
 }
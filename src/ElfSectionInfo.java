@@ -1,9 +1,20 @@
 public class ElfSectionInfo {
+    public final static long SHT_NOBITS = 0x8;
+    public final static long SHF_EXECINSTR = 0x4;
+
     public long sh_name;
     public long sh_type;
+    public long sh_flags;
     public long sh_addr;
     public long sh_offset;
     public long sh_size;
     public long sh_entsize;
     public String name = "";
+
+    /**
+     * Returns true if the section holds code with bytes in the file.
+     */
+    public boolean isExecutable() {
+        return (sh_flags & SHF_EXECINSTR) != 0 && sh_type != SHT_NOBITS && sh_size > 0;
+    }
 }
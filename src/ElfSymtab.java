@@ -0,0 +1,251 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * .symtab read in place. Entries are decoded from the file when they are accessed and names are decoded
+ * from .strtab only when they are asked for, so large tables cost nothing until they are rendered.
+ * Equal names are served from a pool and share one String. Not thread-safe.
+ */
+public class ElfSymtab extends AbstractList<ElfSymtabEntry> implements RandomAccess {
+    public final static int STT_FUNC = 2;
+    private final static int ENTRY_SIZE = 16;
+
+    private final ByteBuffer file;
+    private final int offset;
+    private final int size;
+    private final int strtabOffset;
+
+    // names already decoded, by symbol index
+    private String[] names = null;
+    // intern pool of distinct names: hash of the name bytes << 32 | index plus one of the first symbol with it,
+    // equal names found later are compared with the bytes in .strtab and share the string without decoding
+    private long[] pool = new long[64];
+    private int poolSize = 0;
+
+    public ElfSymtab(ByteBuffer file, ElfSectionInfo symtabHeader, int strtabOffset) {
+        this.file = file;
+        this.offset = (int) symtabHeader.sh_offset;
+        this.size = (int) (symtabHeader.sh_size / symtabHeader.sh_entsize);
+        this.strtabOffset = strtabOffset;
+        // fail on broken tables right away, the same way reading every entry would
+        for (int i = 0; i < size; i++) {
+            int pos = offset + ENTRY_SIZE * i;
+            file.get(pos + 0xC);
+            file.get(pos + 0xD);
+            long nameOffset = getNameOffset(i);
+            if (nameOffset > 0) {
+                file.get(strtabOffset + (int) nameOffset);
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public long getNameOffset(int i) {
+        return ElfParser.getUnsignedInt(file, offset + ENTRY_SIZE * i);
+    }
+
+    public long getValue(int i) {
+        return ElfParser.getUnsignedInt(file, offset + ENTRY_SIZE * i + 0x4);
+    }
+
+    public long getSize(int i) {
+        return ElfParser.getUnsignedInt(file, offset + ENTRY_SIZE * i + 0x8);
+    }
+
+    public byte getInfo(int i) {
+        return file.get(offset + ENTRY_SIZE * i + 0xC);
+    }
+
+    public int getType(int i) {
+        return getInfo(i) & 0xF;
+    }
+
+    public String getName(int i) {
+        if (names == null) {
+            names = new String[size];
+        }
+        if (names[i] == null) {
+            long nameOffset = getNameOffset(i);
+            names[i] = nameOffset == 0 ? "" : intern(i, strtabOffset + (int) nameOffset);
+        }
+        return names[i];
+    }
+
+    /**
+     * Returns true if the symbol has the given name, compared with the bytes in .strtab without decoding it.
+     */
+    public boolean hasName(int i, String name) {
+        if (names != null && names[i] != null) {
+            return names[i].equals(name);
+        }
+        long nameOffset = getNameOffset(i);
+        if (nameOffset == 0 || name.isEmpty()) {
+            return nameOffset == 0 && name.isEmpty();
+        }
+        int pos = strtabOffset + (int) nameOffset;
+        if (pos + name.length() > file.limit()) {
+            return false;
+        }
+        // the first byte is taken even if it is the terminator, like getName does
+        for (int k = 0; k < name.length(); k++) {
+            byte b = file.get(pos + k);
+            if ((char) b != name.charAt(k) || (b == 0x0 && k > 0)) {
+                return false;
+            }
+        }
+        return pos + name.length() == file.limit() || file.get(pos + name.length()) == 0x0;
+    }
+
+    /**
+     * Returns FUNC symbols starting in [from, to) in address order. Of overlapping or duplicate symbols only
+     * the first in address order, then in symbol order, is kept. A function of zero size is taken up to the next
+     * function or to, a larger one is cut at to.
+     */
+    public ElfFunctions functions(long from, long to) {
+        long[] keys = new long[size];
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            long value = getValue(i);
+            if (getType(i) == STT_FUNC && value >= from && value < to) {
+                // address in the high bits and symbol in the low ones, so that equal addresses keep symbol order;
+                // the sign bit is flipped so that addresses from 0x80000000 on sort last
+                keys[count++] = (value << 32 | i) ^ Long.MIN_VALUE;
+            }
+        }
+        Arrays.sort(keys, 0, count);
+        for (int k = 0; k < count; k++) {
+            keys[k] ^= Long.MIN_VALUE;
+        }
+        ElfFunctions functions = new ElfFunctions(count);
+        long end = from;
+        for (int k = 0; k < count; k++) {
+            long address = keys[k] >>> 32;
+            int symbol = (int) keys[k];
+            if (address < end) {
+                continue; // overlapping or duplicate symbols
+            }
+            long symbolSize = getSize(symbol);
+            if (symbolSize > 0) {
+                end = Math.min(address + symbolSize, to);
+            } else {
+                end = to;
+                for (int next = k + 1; next < count; next++) {
+                    if (keys[next] >>> 32 > address) {
+                        end = keys[next] >>> 32;
+                        break;
+                    }
+                }
+            }
+            int f = functions.count++;
+            functions.starts[f] = address;
+            functions.ends[f] = end;
+            functions.symbols[f] = symbol;
+            functions.names[f] = getName(symbol);
+        }
+        return functions;
+    }
+
+    @Override
+    public ElfSymtabEntry get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException(i);
+        }
+        int pos = offset + ENTRY_SIZE * i;
+        ElfSymtabEntry entry = new ElfSymtabEntry();
+        entry.st_name = getNameOffset(i);
+        entry.st_value = getValue(i);
+        entry.st_size = getSize(i);
+        entry.st_info = file.get(pos + 0xC);
+        entry.st_other = file.get(pos + 0xD);
+        entry.st_shndex = ElfParser.getUnsignedShort(file, pos + 0xE);
+        entry.name = getName(i);
+        return entry;
+    }
+
+    private String intern(int symbol, int pos) {
+        // the first byte is taken even if it is the terminator
+        int end = pos + 1;
+        int hash = file.get(pos);
+        boolean ascii = hash >= 0;
+        while (end < file.limit()) {
+            byte b = file.get(end);
+            if (b == 0x0) {
+                break;
+            }
+            hash = 31 * hash + b;
+            ascii &= b > 0;
+            end++;
+        }
+        int mask = pool.length - 1;
+        int slot = slot(hash) & mask;
+        while (pool[slot] != 0) {
+            if ((int) (pool[slot] >>> 32) == hash) {
+                String name = names[(int) pool[slot] - 1];
+                if (nameEquals(name, pos, end)) {
+                    return name;
+                }
+            }
+            slot = (slot + 1) & mask;
+        }
+        String name = decodeName(pos, end, ascii);
+        names[symbol] = name;
+        pool[slot] = (long) hash << 32 | (symbol + 1);
+        if (++poolSize * 2 > pool.length) {
+            rehash();
+        }
+        return name;
+    }
+
+    private boolean nameEquals(String name, int pos, int end) {
+        if (name.length() != end - pos) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != (char) file.get(pos + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int slot(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private void rehash() {
+        long[] old = pool;
+        pool = new long[old.length * 2];
+        int mask = pool.length - 1;
+        for (long entry : old) {
+            if (entry != 0) {
+                int slot = slot((int) (entry >>> 32)) & mask;
+                while (pool[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                pool[slot] = entry;
+            }
+        }
+    }
+
+    private String decodeName(int pos, int end, boolean ascii) {
+        byte[] bytes = new byte[end - pos];
+        file.get(pos, bytes);
+        if (ascii) {
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+        // every byte becomes one char as is, like the section names are read
+        char[] chars = new char[bytes.length];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = (char) bytes[i];
+        }
+        return new String(chars);
+    }
+}
@@ -64,12 +64,27 @@ public class ElfSymtabEntry {
         };
     }
 
+    // 0x%-15x %5d %-8s %-8s %-8s %6s %s
+    public void appendTo(StringBuilder res) {
+        res.append("0x");
+        TextFormat.appendHexLeft(res, st_value, 15);
+        res.append(' ');
+        TextFormat.appendDecimal(res, st_size, 5);
+        res.append(' ');
+        TextFormat.appendLeft(res, getTypeString(), 8);
+        res.append(' ');
+        TextFormat.appendLeft(res, getBindString(), 8);
+        res.append(' ');
+        TextFormat.appendLeft(res, getVisibility(), 8);
+        res.append(' ');
+        TextFormat.appendRight(res, getIndexString(), 6);
+        res.append(' ').append(name);
+    }
+
     @Override
     public String toString() {
-        return String.format(
-                "0x%-15x %5d %-8s %-8s %-8s %6s %s",
-                st_value, st_size, getTypeString(), getBindString(),
-                getVisibility(), getIndexString(), name
-        );
+        StringBuilder res = new StringBuilder();
+        appendTo(res);
+        return res.toString();
     }
 }
@@ -0,0 +1,373 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Compares FUNC symbols of two elf files by name. Every function is decoded and hashed over its mnemonics and
+ * operands, with label operands taken as the function they point into plus the offset in it, so functions
+ * that only moved keep their hash. Only functions whose hashes differ are compared command by command.
+ * <p>
+ * The upper part of an address loaded by {@code auipc} or {@code lui} is paired with the {@code addi},
+ * {@code jalr}, load or store using its register next, in command order. A pair pointing into a function is
+ * hashed like a label operand. A pc-relative pair pointing anywhere else, into data, is left out of the hash,
+ * as is every {@code auipc} immediate. An absolute pair pointing outside functions is hashed as it is,
+ * since it can't be told apart from a constant, so a function whose data moved by a {@code lui} address is
+ * still reported as changed. Pairs split by a branch are matched only if they come in order.
+ * <p>
+ * A name used by several functions is told apart by its position among them, {@code name#2} for the second.
+ */
+public class FunctionDiff {
+    private final static SymbolIndex NO_SYMBOLS = new SymbolIndex();
+    private final static int TASK_FUNCTIONS = 256;
+    // at most that many cells of the table comparing commands of a changed function
+    private final static long MAX_TABLE = 1 << 22;
+    // immediates of resolveImmediates that are not paired into a function
+    private final static long KEEP = -1;
+    private final static long MASKED = -2;
+
+    private static class Functions {
+        final ElfFile elf;
+        int count = 0;
+        long[] starts;
+        long[] ends;
+        String[] names;
+        long[] hashes;
+        final Map<String, Integer> byName;
+
+        Functions(ElfFile elf, int expectedCount) {
+            this.elf = elf;
+            this.byName = new HashMap<>(expectedCount * 4 / 3 + 1);
+        }
+    }
+
+    private final Functions before;
+    private final Functions after;
+    public final List<String> added = new ArrayList<>();
+    public final List<String> removed = new ArrayList<>();
+    public final List<String> changed = new ArrayList<>();
+    public int unchanged = 0;
+    public int moved = 0;
+
+    private FunctionDiff(Functions before, Functions after) {
+        this.before = before;
+        this.after = after;
+    }
+
+    /**
+     * Hashes functions of both files on the given number of threads and finds added, removed and changed ones,
+     * each list in address order.
+     */
+    public static FunctionDiff compare(ElfFile before, ElfFile after, int threads) {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        FunctionDiff diff;
+        try {
+            // symbol names are read from each file on its own thread, ElfSymtab is not thread-safe
+            ForkJoinTask<Functions> beforeTask = pool.submit(() -> findFunctions(before));
+            Functions afterFunctions = pool.submit(() -> findFunctions(after)).join();
+            diff = new FunctionDiff(beforeTask.join(), afterFunctions);
+            List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Functions functions : List.of(diff.before, diff.after)) {
+                for (int from = 0; from < functions.count; from += TASK_FUNCTIONS) {
+                    int first = from;
+                    int last = Math.min(from + TASK_FUNCTIONS, functions.count);
+                    tasks.add(pool.submit(() -> {
+                        for (int f = first; f < last; f++) {
+                            functions.hashes[f] = hash(functions, f);
+                        }
+                    }));
+                }
+            }
+            for (var task : tasks) {
+                task.join();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        for (int f = 0; f < diff.before.count; f++) {
+            if (!diff.after.byName.containsKey(diff.before.names[f])) {
+                diff.removed.add(diff.before.names[f]);
+            }
+        }
+        for (int f = 0; f < diff.after.count; f++) {
+            String name = diff.after.names[f];
+            Integer old = diff.before.byName.get(name);
+            if (old == null) {
+                diff.added.add(name);
+            } else if (diff.before.hashes[old] != diff.after.hashes[f]) {
+                diff.changed.add(name);
+            } else {
+                diff.unchanged++;
+                if (diff.before.starts[old] != diff.after.starts[f]) {
+                    diff.moved++;
+                }
+            }
+        }
+        return diff;
+    }
+
+    private static Functions findFunctions(ElfFile elf) {
+        long textStart = elf.textHeader.sh_addr;
+        ElfFunctions found = elf.symtab.functions(textStart, textStart + elf.textHeader.sh_size);
+        Functions functions = new Functions(elf, found.count);
+        functions.count = found.count;
+        functions.starts = found.starts;
+        functions.ends = found.ends;
+        functions.names = found.names;
+        functions.hashes = new long[found.count];
+        for (int f = 0; f < found.count; f++) {
+            String name = found.names[f];
+            for (int n = 2; functions.byName.containsKey(name); n++) {
+                name = found.names[f] + "#" + n;
+            }
+            functions.names[f] = name;
+            functions.byName.put(name, f);
+        }
+        return functions;
+    }
+
+    private static DecodedText decode(Functions functions, int f) {
+        ElfSectionInfo textHeader = functions.elf.textHeader;
+        int from = (int) (functions.starts[f] - textHeader.sh_addr + textHeader.sh_offset);
+        int to = (int) (functions.ends[f] - textHeader.sh_addr + textHeader.sh_offset);
+        DecodedText text = new DecodedText(NO_SYMBOLS, (to - from) / 3);
+        Disasm.disasmRange(functions.elf.data, textHeader, from, to, text);
+        return text;
+    }
+
+    /**
+     * Returns the index of the function containing the address or -1 if it is outside all of them.
+     */
+    private static int functionAt(Functions functions, long address) {
+        int f = Arrays.binarySearch(functions.starts, 0, functions.count, address);
+        f = f >= 0 ? f : -f - 2;
+        return f >= 0 && address < functions.ends[f] ? f : -1;
+    }
+
+    private static long mix(long hash, long value) {
+        return Long.rotateLeft((hash ^ value) * 0x9E3779B97F4A7C15L, 31);
+    }
+
+    /**
+     * Returns for every command how its immediate is compared: the function its auipc or lui pair points into
+     * and the offset in it as function << 32 | offset, MASKED if it is left out and KEEP if it is taken as is.
+     */
+    private static long[] resolveImmediates(Functions functions, DecodedText text) {
+        long[] res = new long[text.size()];
+        Arrays.fill(res, KEEP);
+        // command that last wrote every register if it is auipc or lui, -1 otherwise
+        int[] upper = new int[32];
+        Arrays.fill(upper, -1);
+        for (int i = 0; i < text.size(); i++) {
+            Mnemonic mnemonic = text.getMnemonic(i);
+            OperandFormat format = mnemonic.format;
+            if (mnemonic == Mnemonic.AUIPC) {
+                res[i] = MASKED;
+            }
+            boolean lowPart = mnemonic == Mnemonic.ADDI || mnemonic == Mnemonic.JALR
+                    || format == OperandFormat.RD_MEM || format == OperandFormat.RS2_MEM;
+            int u = lowPart ? upper[text.getRs1(i)] : -1;
+            if (u >= 0) {
+                boolean pcRelative = text.getMnemonic(u) == Mnemonic.AUIPC;
+                long target = ((pcRelative ? text.getAddress(u) : 0) + text.getImm(u) + text.getImm(i)) & 0xFFFFFFFFL;
+                int to = functionAt(functions, target);
+                if (to >= 0) {
+                    res[i] = (long) to << 32 | (target - functions.starts[to]);
+                    res[u] = MASKED;
+                } else if (pcRelative) {
+                    res[i] = MASKED;
+                }
+            }
+            if (format.operands.length > 0 && format.operands[0] == OperandFormat.Operand.RD && text.getRd(i) != 0) {
+                boolean isUpper = mnemonic == Mnemonic.AUIPC || mnemonic == Mnemonic.LUI || mnemonic == Mnemonic.C_LUI;
+                upper[text.getRd(i)] = isUpper ? i : -1;
+            } else if (mnemonic == Mnemonic.C_JAL || mnemonic == Mnemonic.C_JALR) {
+                upper[1] = -1;
+            }
+        }
+        return res;
+    }
+
+    private static long mixImmediate(long hash, Functions functions, long resolved, int imm) {
+        if (resolved == KEEP) {
+            return mix(hash, imm);
+        }
+        if (resolved == MASKED) {
+            return hash;
+        }
+        return mix(mix(hash, functions.names[(int) (resolved >>> 32)].hashCode()), resolved & 0xFFFFFFFFL);
+    }
+
+    private static long hash(Functions functions, int f) {
+        DecodedText text = decode(functions, f);
+        long[] resolved = resolveImmediates(functions, text);
+        long hash = text.size();
+        for (int i = 0; i < text.size(); i++) {
+            Mnemonic mnemonic = text.getMnemonic(i);
+            hash = mix(hash, mnemonic.ordinal());
+            for (OperandFormat.Operand operand : mnemonic.format.operands) {
+                hash = switch (operand) {
+                    case RD -> mix(hash, text.getRd(i));
+                    case RS1 -> mix(hash, text.getRs1(i));
+                    case RS2 -> mix(hash, text.getRs2(i));
+                    case MEM -> mix(mixImmediate(hash, functions, resolved[i], text.getImm(i)), text.getRs1(i));
+                    case IMM -> mixImmediate(hash, functions, resolved[i], text.getImm(i));
+                    case FENCE_PRED, FENCE_SUCC -> mix(hash, text.getImm(i));
+                    case TARGET -> {
+                        long target = text.getTarget(i);
+                        int to = functionAt(functions, target);
+                        yield to < 0 ? mix(hash, -1) : mix(mix(hash, functions.names[to].hashCode()),
+                                target - functions.starts[to]);
+                    }
+                };
+            }
+        }
+        return hash;
+    }
+
+    private static void appendRelative(StringBuilder line, Functions functions, int to, long offset) {
+        line.append(functions.names[to]);
+        if (offset != 0) {
+            line.append("+0x").append(Long.toHexString(offset));
+        }
+    }
+
+    /**
+     * Renders commands without addresses, label operands and paired immediates are given relative to
+     * the function they point into, immediates left out of the hash are written as {@code *}.
+     */
+    private static String[] render(Functions functions, int f) {
+        DecodedText text = decode(functions, f);
+        long[] resolved = resolveImmediates(functions, text);
+        String[] lines = new String[text.size()];
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < text.size(); i++) {
+            Mnemonic mnemonic = text.getMnemonic(i);
+            OperandFormat.Operand[] operands = mnemonic.format.operands;
+            String[] args = text.getArgs(i);
+            line.setLength(0);
+            line.append(mnemonic.text);
+            for (int j = 0; j < operands.length; j++) {
+                line.append(j == 0 ? " " : ", ");
+                if (operands[j] == OperandFormat.Operand.TARGET) {
+                    long target = text.getTarget(i);
+                    int to = functionAt(functions, target);
+                    if (to < 0) {
+                        line.append(args[j]);
+                    } else {
+                        appendRelative(line, functions, to, target - functions.starts[to]);
+                    }
+                } else if (resolved[i] != KEEP
+                        && (operands[j] == OperandFormat.Operand.IMM || operands[j] == OperandFormat.Operand.MEM)) {
+                    if (resolved[i] == MASKED) {
+                        line.append('*');
+                    } else {
+                        appendRelative(line, functions, (int) (resolved[i] >>> 32), resolved[i] & 0xFFFFFFFFL);
+                    }
+                    if (operands[j] == OperandFormat.Operand.MEM) {
+                        line.append('(').append(Disasm.REG_NAMES[text.getRs1(i)]).append(')');
+                    }
+                } else {
+                    line.append(args[j]);
+                }
+            }
+            lines[i] = line.toString();
+        }
+        return lines;
+    }
+
+    /**
+     * Writes added, removed and changed functions, commands that differ in every changed one, and totals.
+     */
+    public void write(ListingWriter writer) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (String name : removed) {
+            int f = before.byName.get(name);
+            line.setLength(0);
+            line.append("removed ").append(name).append(' ');
+            TextFormat.appendHex(line, before.starts[f], 8);
+            writer.write(line.toString());
+            writer.newLine();
+        }
+        for (String name : added) {
+            int f = after.byName.get(name);
+            line.setLength(0);
+            line.append("added ").append(name).append(' ');
+            TextFormat.appendHex(line, after.starts[f], 8);
+            writer.write(line.toString());
+            writer.newLine();
+        }
+        for (String name : changed) {
+            int old = before.byName.get(name);
+            int f = after.byName.get(name);
+            line.setLength(0);
+            line.append("changed ").append(name).append(' ');
+            TextFormat.appendHex(line, before.starts[old], 8);
+            line.append(" -> ");
+            TextFormat.appendHex(line, after.starts[f], 8);
+            writer.write(line.toString());
+            writer.newLine();
+            writeChanges(writer, render(before, old), render(after, f));
+        }
+        line.setLength(0);
+        line.append(added.size()).append(" added, ").append(removed.size()).append(" removed, ")
+                .append(changed.size()).append(" changed, ").append(unchanged).append(" unchanged (")
+                .append(moved).append(" moved)");
+        writer.write(line.toString());
+        writer.newLine();
+    }
+
+    /**
+     * Writes commands removed from and added to a function, found with the longest common subsequence
+     * of the commands that differ after the common beginning and end are skipped.
+     */
+    private static void writeChanges(ListingWriter writer, String[] a, String[] b) throws IOException {
+        int start = 0;
+        while (start < a.length && start < b.length && a[start].equals(b[start])) {
+            start++;
+        }
+        int endA = a.length;
+        int endB = b.length;
+        while (endA > start && endB > start && a[endA - 1].equals(b[endB - 1])) {
+            endA--;
+            endB--;
+        }
+        int n = endA - start;
+        int m = endB - start;
+        if ((long) (n + 1) * (m + 1) > MAX_TABLE) {
+            writer.write("  " + n + " commands replaced with " + m + ", too many to compare");
+            writer.newLine();
+            return;
+        }
+        // lcs[i * (m + 1) + j] is the length of the common subsequence of a[start + i..] and b[start + j..]
+        int[] lcs = new int[(n + 1) * (m + 1)];
+        for (int i = n - 1; i >= 0; i--) {
+            for (int j = m - 1; j >= 0; j--) {
+                lcs[i * (m + 1) + j] = a[start + i].equals(b[start + j])
+                        ? lcs[(i + 1) * (m + 1) + j + 1] + 1
+                        : Math.max(lcs[(i + 1) * (m + 1) + j], lcs[i * (m + 1) + j + 1]);
+            }
+        }
+        int i = 0;
+        int j = 0;
+        while (i < n || j < m) {
+            if (i < n && j < m && a[start + i].equals(b[start + j])) {
+                i++;
+                j++;
+            } else if (j == m || (i < n && lcs[(i + 1) * (m + 1) + j] >= lcs[i * (m + 1) + j + 1])) {
+                writer.write("  - " + a[start + i]);
+                writer.newLine();
+                i++;
+            } else {
+                writer.write("  + " + b[start + j]);
+                writer.newLine();
+                j++;
+            }
+        }
+    }
+}
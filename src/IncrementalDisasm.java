@@ -0,0 +1,274 @@
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Disassembles .text reusing the result of the previous run saved in a state file.
+ * Commands of FUNC symbols whose address, size and bytes didn't change are copied from the state,
+ * everything else is decoded again. Labels are collected over the whole result, so LOC_ labels
+ * pointing across function boundaries stay correct.
+ * <p>
+ * The state also keeps the rendered lines of every function, encoded like the listing. Lines of a function whose
+ * commands were copied are copied to the listing as well, unless a label they show changed: a symbol or a LOC_
+ * label of one of its commands, which a jump from another function can add or remove, or a symbol one of its
+ * commands points to.
+ */
+public class IncrementalDisasm {
+    private final static int MAGIC = 0x52564932;
+
+    private static class Function {
+        long address;
+        long size;
+        long hash;
+        // hash of the labels shown by the rendered lines
+        long labels;
+        // commands of the function in the text, set for the current run only
+        int from;
+        int to;
+        // rendered lines in the state: the number of chars and their encoded bytes from the position
+        int linesChars;
+        int linesPosition;
+        int linesLength;
+    }
+
+    private static class State {
+        Map<Long, Function> functions = new HashMap<>();
+        DecodedText text;
+        ByteBuffer data;
+    }
+
+    public int reusedFunctions = 0;
+    public int decodedFunctions = 0;
+    public int copiedFunctions = 0;
+
+    private Path stateFile;
+    private State previous;
+    private SymbolIndex symtab;
+    private DecodedText text;
+    private List<Function> functions;
+    // function of the previous run whose commands every function got, null for functions decoded again
+    private Function[] reused;
+
+    private static List<Function> findFunctions(ElfFile elf) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        long textStart = elf.textHeader.sh_addr;
+        ElfFunctions found = elf.symtab.functions(textStart, textStart + elf.textHeader.sh_size);
+        List<Function> res = new ArrayList<>(found.count);
+        for (int f = 0; f < found.count; f++) {
+            Function function = new Function();
+            function.address = found.starts[f];
+            function.size = found.ends[f] - found.starts[f];
+            int offset = (int) (function.address - textStart + elf.textHeader.sh_offset);
+            // two more bytes for a command crossing the end of function
+            int to = (int) Math.min(offset + function.size + 2, elf.data.limit());
+            digest.update(elf.data.slice(offset, to - offset));
+            function.hash = ByteBuffer.wrap(digest.digest()).getLong();
+            res.add(function);
+        }
+        return res;
+    }
+
+    private static State readState(Path stateFile, SymbolIndex symtab) throws IOException {
+        State state = new State();
+        if (!Files.exists(stateFile)) {
+            return state;
+        }
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(stateFile, StandardOpenOption.READ)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (in.getInt() != MAGIC) {
+                return state;
+            }
+            state.text = DecodedText.readFrom(in, symtab);
+            if (state.text == null) {
+                return state;
+            }
+            int count = in.getInt();
+            for (int i = 0; i < count; i++) {
+                Function function = new Function();
+                function.address = in.getLong();
+                function.size = in.getLong();
+                function.hash = in.getLong();
+                function.labels = in.getLong();
+                function.linesChars = in.getInt();
+                function.linesLength = in.getInt();
+                function.linesPosition = in.position();
+                in.position(in.position() + function.linesLength);
+                state.functions.put(function.address, function);
+            }
+            state.data = in;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            state.text = null;
+        }
+        if (state.text == null) {
+            state.functions.clear();
+        }
+        return state;
+    }
+
+    public DecodedText disasm(ElfFile elf, SymbolIndex symtab, Path stateFile) throws IOException {
+        this.stateFile = stateFile;
+        this.symtab = symtab;
+        previous = readState(stateFile, symtab);
+        functions = findFunctions(elf);
+        reused = new Function[functions.size()];
+
+        ElfSectionInfo textHeader = elf.textHeader;
+        text = new DecodedText(symtab, (int) (textHeader.sh_size / 3));
+        int pos = (int) textHeader.sh_offset;
+        int end = (int) (textHeader.sh_offset + textHeader.sh_size);
+        for (int f = 0; f < functions.size(); f++) {
+            Function function = functions.get(f);
+            int start = (int) (function.address - textHeader.sh_addr + textHeader.sh_offset);
+            pos = Disasm.disasmRange(elf.data, textHeader, pos, start, text);
+            function.from = text.size();
+            Function old = previous.functions.get(function.address);
+            if (pos == start && old != null && old.size == function.size && old.hash == function.hash) {
+                // commands are the same only if the old decoding had boundaries at both ends of the function
+                long functionEnd = function.address + function.size;
+                int from = previous.text.indexOf(function.address);
+                int to = previous.text.indexOf(functionEnd);
+                if (to == -1 && functionEnd == textHeader.sh_addr + textHeader.sh_size) {
+                    to = previous.text.size();
+                }
+                if (from != -1 && to != -1) {
+                    text.addAll(previous.text, from, to);
+                    pos = (int) (start + function.size);
+                    function.to = text.size();
+                    reused[f] = old;
+                    reusedFunctions++;
+                    continue;
+                }
+            }
+            pos = Disasm.disasmRange(elf.data, textHeader, pos, (int) (start + function.size), text);
+            function.to = text.size();
+            decodedFunctions++;
+        }
+        Disasm.disasmRange(elf.data, textHeader, pos, end, text);
+        return text;
+    }
+
+    /**
+     * Writes the listing like {@link ListingWriter#writeListing} and saves the state.
+     */
+    public void writeListing(ListingWriter writer, List<ElfSymtabEntry> symtab) throws IOException {
+        writer.write(".text");
+        writer.newLine();
+        writeText(writer);
+        writer.newLine();
+        writer.write(".symtab");
+        writer.newLine();
+        writer.writeSymtab(symtab);
+    }
+
+    /**
+     * Saves the state when the listing is not written.
+     */
+    public void saveState() throws IOException {
+        writeText(null);
+    }
+
+    private static long mix(long hash, long value) {
+        return Long.rotateLeft((hash ^ value) * 0x9E3779B97F4A7C15L, 31);
+    }
+
+    /**
+     * Hashes what the lines of commands [from, to) show besides the commands themselves.
+     */
+    private long hashLabels(long hash, int from, int to) {
+        for (int i = from; i < to; i++) {
+            hash = mix(hash, text.getSymbol(i).hashCode());
+            if (text.getMnemonic(i).format.hasTarget) {
+                String name = symtab.get(text.getTarget(i));
+                hash = mix(hash, name == null ? 0 : name.hashCode() + 1);
+            }
+        }
+        return hash;
+    }
+
+    private void render(int from, int to, StringBuilder lines) {
+        lines.setLength(0);
+        for (int i = from; i < to; i++) {
+            text.appendCommand(lines, i);
+            lines.append(System.lineSeparator());
+        }
+    }
+
+    /**
+     * Writes commands of .text to the writer, if there is one, and the state with lines of every function.
+     */
+    private void writeText(ListingWriter writer) throws IOException {
+        text.resolveLabels();
+        Metrics.Span span = Metrics.begin(Metrics.Stage.RENDER_TEXT);
+        long start = writer == null ? 0 : writer.charCount();
+        CharsetEncoder encoder = ListingWriter.newEncoder();
+        // lines are copied only if they were rendered and encoded the same way
+        long format = mix(System.lineSeparator().hashCode(), encoder.charset().name().hashCode());
+        StringBuilder lines = new StringBuilder();
+        byte[] chunk = new byte[1 << 16];
+        Path tmp = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            text.writeTo(out);
+            out.writeInt(functions.size());
+            int next = 0;
+            for (int f = 0; f < functions.size(); f++) {
+                Function function = functions.get(f);
+                if (writer != null && next < function.from) {
+                    render(next, function.from, lines);
+                    writer.write(lines.toString());
+                }
+                function.labels = hashLabels(format, function.from, function.to);
+                Function old = reused[f];
+                ByteBuffer encoded;
+                if (old != null && old.labels == function.labels) {
+                    function.linesChars = old.linesChars;
+                    encoded = previous.data.slice(old.linesPosition, old.linesLength);
+                    copiedFunctions++;
+                } else {
+                    render(function.from, function.to, lines);
+                    function.linesChars = lines.length();
+                    encoded = encoder.encode(CharBuffer.wrap(lines));
+                }
+                if (writer != null) {
+                    writer.writeEncoded(encoded.duplicate(), function.linesChars);
+                }
+                out.writeLong(function.address);
+                out.writeLong(function.size);
+                out.writeLong(function.hash);
+                out.writeLong(function.labels);
+                out.writeInt(function.linesChars);
+                out.writeInt(encoded.remaining());
+                while (encoded.hasRemaining()) {
+                    int count = Math.min(encoded.remaining(), chunk.length);
+                    encoded.get(chunk, 0, count);
+                    out.write(chunk, 0, count);
+                }
+                next = function.to;
+            }
+            if (writer != null && next < text.size()) {
+                render(next, text.size(), lines);
+                writer.write(lines.toString());
+            }
+        }
+        Files.move(tmp, stateFile, StandardCopyOption.REPLACE_EXISTING);
+        Metrics.end(span, writer == null ? 0 : writer.charCount() - start);
+    }
+}
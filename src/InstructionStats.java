@@ -0,0 +1,206 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Instruction mix of .text: commands per mnemonic, compressed and 32-bit commands, multiplications and
+ * divisions and unknown commands, for the whole section and for every FUNC symbol.
+ * Only mnemonics are decoded, with the same tables as {@link Disasm}, and nothing is kept per command,
+ * so collecting stats costs a fraction of a full disassembly. Command and compressed counts are taken from
+ * {@link CommandBoundaries} of the section.
+ */
+public class InstructionStats {
+    private final static Mnemonic[] MNEMONICS = Mnemonic.values();
+    private final static boolean[] MUL_DIV = new boolean[MNEMONICS.length];
+    private final static int UNKNOWN_ID = Mnemonic.UNKNOWN.ordinal();
+
+    static {
+        for (Mnemonic mnemonic : new Mnemonic[]{
+                Mnemonic.MUL, Mnemonic.MULH, Mnemonic.MULHSU, Mnemonic.MULHU,
+                Mnemonic.DIV, Mnemonic.DIVU, Mnemonic.REM, Mnemonic.REMU}) {
+            MUL_DIV[mnemonic.ordinal()] = true;
+        }
+    }
+
+    // counters of the whole section and of every function, in this order
+    public final static int COMMANDS = 0;
+    public final static int COMPRESSED = 1;
+    public final static int MUL_DIVS = 2;
+    public final static int UNKNOWN = 3;
+    private final static int COUNTERS = 4;
+
+    private final long[] mnemonicCounts = new long[MNEMONICS.length];
+    private final long[] totals = new long[COUNTERS];
+    private int functionCount = 0;
+    private long[] functionAddresses;
+    private long[] functionEnds;
+    private String[] functionNames;
+    private int[] functionCounters;
+
+    private InstructionStats() {
+    }
+
+    /**
+     * Decodes mnemonics of .text and counts them. Functions are FUNC symbols inside .text,
+     * a function of zero size is taken up to the next function, overlapping functions are skipped.
+     */
+    public static InstructionStats collect(ElfFile elf) {
+        InstructionStats stats = new InstructionStats();
+        stats.findFunctions(elf);
+        stats.count(elf.data, elf.textHeader);
+        return stats;
+    }
+
+    private void findFunctions(ElfFile elf) {
+        long textStart = elf.textHeader.sh_addr;
+        ElfFunctions functions = elf.symtab.functions(textStart, textStart + elf.textHeader.sh_size);
+        functionCount = functions.count;
+        functionAddresses = functions.starts;
+        functionEnds = functions.ends;
+        functionNames = functions.names;
+        functionCounters = new int[functionCount * COUNTERS];
+    }
+
+    private void count(ByteBuffer file, ElfSectionInfo textHeader) {
+        CommandBoundaries boundaries = CommandBoundaries.scan(file, textHeader);
+        long[] counts = mnemonicCounts;
+        int[] functionCounters = this.functionCounters;
+        int start = (int) textHeader.sh_offset;
+        long delta = textHeader.sh_addr - start;
+        // the function containing pos, or the next one if pos is between functions
+        int function = 0;
+        long functionStart = functionCount > 0 ? functionAddresses[0] - delta : Long.MAX_VALUE;
+        long functionEnd = functionCount > 0 ? functionEnds[0] - delta : Long.MAX_VALUE;
+        // commands are visited through the boundary bitmap, lengths come from its mask
+        for (int w = 0; w < boundaries.wordCount(); w++) {
+            long starts = boundaries.getStarts(w);
+            long longMask = boundaries.getLongMask(w);
+            while (starts != 0) {
+                int h = (w << 6) + Long.numberOfTrailingZeros(starts);
+                starts &= starts - 1;
+                int pos = start + 2 * h;
+                while (pos >= functionEnd) {
+                    function++;
+                    functionStart = function < functionCount ? functionAddresses[function] - delta : Long.MAX_VALUE;
+                    functionEnd = function < functionCount ? functionEnds[function] - delta : Long.MAX_VALUE;
+                }
+                int id = (longMask >>> (h & 63) & 1) != 0
+                        ? Disasm.uncompressedMnemonic(ElfParser.getInt(file, pos)).ordinal()
+                        : Disasm.compressedMnemonic(ElfParser.getUnsignedShort(file, pos)).ordinal();
+                if (pos >= functionStart) {
+                    count(functionCounters, function, id);
+                }
+                counts[id]++;
+            }
+        }
+        for (int f = 0; f < functionCount; f++) {
+            long from = functionAddresses[f];
+            long to = functionEnds[f];
+            functionCounters[f * COUNTERS + COMMANDS] = boundaries.rank(to) - boundaries.rank(from);
+            functionCounters[f * COUNTERS + COMPRESSED] = boundaries.countCompressed(from, to);
+        }
+        for (int id = 0; id < counts.length; id++) {
+            if (MUL_DIV[id]) {
+                totals[MUL_DIVS] += counts[id];
+            }
+        }
+        totals[COMMANDS] = boundaries.count();
+        totals[COMPRESSED] = boundaries.countCompressed(textHeader.sh_addr, textHeader.sh_addr + textHeader.sh_size);
+        totals[UNKNOWN] = counts[UNKNOWN_ID];
+    }
+
+    private static void count(int[] counters, int function, int id) {
+        int base = function * COUNTERS;
+        if (MUL_DIV[id]) {
+            counters[base + MUL_DIVS]++;
+        }
+        if (id == UNKNOWN_ID) {
+            counters[base + UNKNOWN]++;
+        }
+    }
+
+    public long getCount(Mnemonic mnemonic) {
+        return mnemonicCounts[mnemonic.ordinal()];
+    }
+
+    /**
+     * Returns a counter of the whole section: {@link #COMMANDS}, {@link #COMPRESSED}, {@link #MUL_DIVS}
+     * or {@link #UNKNOWN}.
+     */
+    public long getTotal(int counter) {
+        return totals[counter];
+    }
+
+    public int functionCount() {
+        return functionCount;
+    }
+
+    public long getFunctionAddress(int f) {
+        return functionAddresses[f];
+    }
+
+    public String getFunctionName(int f) {
+        return functionNames[f];
+    }
+
+    public int getFunctionCount(int f, int counter) {
+        return functionCounters[f * COUNTERS + counter];
+    }
+
+    /**
+     * Writes the totals with their share of all commands, the mnemonics from the most frequent one
+     * and the counters of every function.
+     */
+    public void write(ListingWriter writer) throws IOException {
+        long commands = totals[COMMANDS];
+        StringBuilder line = new StringBuilder();
+        writer.write(".stats");
+        writer.newLine();
+        String[] names = {"commands", "compressed", "mul/div", "unknown"};
+        for (int counter = 0; counter < COUNTERS; counter++) {
+            line.setLength(0);
+            TextFormat.appendLeft(line, names[counter], 12);
+            line.append(' ').append(totals[counter]);
+            if (counter != COMMANDS) {
+                line.append(' ');
+                TextFormat.appendFixed(line, totals[counter], commands, 4);
+            }
+            writer.write(line.toString());
+            writer.newLine();
+        }
+
+        writer.newLine();
+        writer.write(".mnemonics");
+        writer.newLine();
+        Integer[] order = new Integer[MNEMONICS.length];
+        for (int id = 0; id < order.length; id++) {
+            order[id] = id;
+        }
+        // the sort is stable, mnemonics with equal counts stay in enum order
+        Arrays.sort(order, Comparator.comparingLong(id -> -mnemonicCounts[id]));
+        for (int id : order) {
+            if (mnemonicCounts[id] > 0) {
+                line.setLength(0);
+                TextFormat.appendLeft(line, MNEMONICS[id].text, 16);
+                line.append(' ').append(mnemonicCounts[id]);
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        }
+
+        writer.newLine();
+        writer.write(".functions");
+        writer.newLine();
+        for (int f = 0; f < functionCount; f++) {
+            line.setLength(0);
+            TextFormat.appendHex(line, functionAddresses[f], 8);
+            line.append(' ').append(functionNames[f]);
+            for (int counter = 0; counter < COUNTERS; counter++) {
+                line.append(' ').append(getFunctionCount(f, counter));
+            }
+            writer.write(line.toString());
+            writer.newLine();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of rendered listings keyed by the content of .text, .symtab and .strtab.
+ * Entries are evicted in least recently used order once their total size exceeds the limit.
+ * Hit, miss and eviction counters are accumulated in {@code stats.properties} in the cache directory.
+ * <p>
+ * Several processes may share the directory: entries are replaced atomically and the counters are updated
+ * under a file lock. Each process keeps its own estimate of the total size, so the limit is approximate then.
+ */
+public class ListingCache {
+    // must be changed whenever the listing format changes
+    private final static String FORMAT_VERSION = "1";
+    private final static String SUFFIX = ".txt";
+
+    private final Path dir;
+    private final long maxBytes;
+    private long totalBytes = 0;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public ListingCache(Path dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir);
+        for (Path entry : listEntries()) {
+            totalBytes += sizeOrZero(entry);
+        }
+    }
+
+    /**
+     * Returns the size of the entry or 0 if another process has just removed it.
+     */
+    private static long sizeOrZero(Path entry) throws IOException {
+        try {
+            return Files.size(entry);
+        } catch (NoSuchFileException e) {
+            return 0;
+        }
+    }
+
+    private List<Path> listEntries() throws IOException {
+        try (Stream<Path> files = Files.list(dir)) {
+            return files.filter(path -> path.getFileName().toString().endsWith(SUFFIX)).toList();
+        }
+    }
+
+    private static void update(MessageDigest digest, ByteBuffer data, long offset, long size) {
+        int from = (int) Math.min(offset, data.limit());
+        int to = (int) Math.min(offset + size, data.limit());
+        digest.update(data.slice(from, to - from));
+    }
+
+    private static void update(MessageDigest digest, long value) {
+        for (int i = 0; i < 8; i++) {
+            digest.update((byte) (value >>> (8 * i)));
+        }
+    }
+
+    public static String key(ElfFile elf) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        String environment = FORMAT_VERSION + System.lineSeparator() + Charset.defaultCharset().name();
+        digest.update(environment.getBytes(StandardCharsets.UTF_8));
+        update(digest, elf.textHeader.sh_addr);
+        update(digest, elf.textHeader.sh_size);
+        // a command at the end of .text may read two bytes past it
+        update(digest, elf.data, elf.textHeader.sh_offset, elf.textHeader.sh_size + 2);
+        update(digest, elf.symtabHeader.sh_size);
+        update(digest, elf.data, elf.symtabHeader.sh_offset, elf.symtabHeader.sh_size);
+        update(digest, elf.data, elf.strtabHeader.sh_offset, elf.strtabHeader.sh_size);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Opens the cached listing for reading or returns null if there is none. The entry is opened under the cache
+     * lock, so a concurrent eviction can't remove it first; an evicted entry stays readable through the channel.
+     */
+    public synchronized FileChannel open(String key) throws IOException {
+        FileChannel channel = openEntry(dir.resolve(key + SUFFIX));
+        if (channel == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return channel;
+    }
+
+    private static FileChannel openEntry(Path entry) throws IOException {
+        try {
+            FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            return channel;
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Copies the cached listing to output, returns false if there is none.
+     */
+    public boolean copyTo(String key, Path output) throws IOException {
+        try (FileChannel in = open(key)) {
+            if (in == null) {
+                return false;
+            }
+            try (FileChannel out = FileChannel.open(output, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                long size = in.size();
+                for (long position = 0; position < size; ) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stores a copy of the listing and returns the cache entry.
+     */
+    public synchronized Path store(String key, Path listing) throws IOException {
+        Path entry = dir.resolve(key + SUFFIX);
+        Path tmp = Files.createTempFile(dir, key, ".tmp");
+        Files.copy(listing, tmp, StandardCopyOption.REPLACE_EXISTING);
+        long size = Files.size(tmp);
+        totalBytes -= sizeOrZero(entry);
+        Files.move(tmp, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        totalBytes += size;
+        evict(entry);
+        return entry;
+    }
+
+    /**
+     * Stores a copy of the listing and opens the entry for reading before anything can evict it.
+     * Returns null only if another process removed the entry in between.
+     */
+    public synchronized FileChannel storeAndOpen(String key, Path listing) throws IOException {
+        return openEntry(store(key, listing));
+    }
+
+    private void evict(Path keep) throws IOException {
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+        List<Path> entries = new ArrayList<>();
+        Map<Path, FileTime> times = new HashMap<>();
+        for (Path entry : listEntries()) {
+            try {
+                times.put(entry, Files.getLastModifiedTime(entry));
+                entries.add(entry);
+            } catch (NoSuchFileException e) {
+                // evicted by another process meanwhile
+            }
+        }
+        entries.sort(Comparator.comparing(times::get));
+        for (Path entry : entries) {
+            if (totalBytes <= maxBytes) {
+                break;
+            }
+            if (!entry.equals(keep)) {
+                long size;
+                try {
+                    size = Files.size(entry);
+                    Files.delete(entry);
+                } catch (NoSuchFileException e) {
+                    continue; // evicted by another process meanwhile
+                } catch (IOException e) {
+                    continue; // still open for reading where open files can't be deleted
+                }
+                totalBytes -= size;
+                evictions++;
+            }
+        }
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Adds counters of this run to the ones stored in the cache directory. The file is updated under a file lock,
+     * so processes sharing the directory don't lose each other's counts.
+     */
+    @SuppressWarnings("try") // the lock is only held, never read
+    public synchronized void saveStats() throws IOException {
+        Path file = dir.resolve("stats.properties");
+        Properties stats = new Properties();
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+             FileLock lock = channel.lock()) {
+            // the stream is not closed, that would close the channel and release the lock
+            stats.load(Channels.newInputStream(channel));
+            add(stats, "hits", hits);
+            add(stats, "misses", misses);
+            add(stats, "evictions", evictions);
+            stats.setProperty("bytes", Long.toString(totalBytes));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            stats.store(out, null);
+            ByteBuffer bytes = ByteBuffer.wrap(out.toByteArray());
+            channel.truncate(0);
+            while (bytes.hasRemaining()) {
+                channel.write(bytes, bytes.position());
+            }
+        }
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+    }
+
+    private static void add(Properties stats, String name, long value) {
+        stats.setProperty(name, Long.toString(Long.parseLong(stats.getProperty(name, "0")) + value));
+    }
+}
@@ -0,0 +1,184 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes the listing to a channel line by line, so the whole text never has to be kept in memory.
+ * Characters are encoded with the default charset, the same way {@link java.io.OutputStreamWriter} does.
+ */
+public class ListingWriter implements Closeable {
+    private final static int FLUSH_THRESHOLD = 8192;
+
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder = newEncoder();
+    private final StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD * 2);
+    private final ByteBuffer bytes = ByteBuffer.allocate(FLUSH_THRESHOLD * 4);
+    private long flushedChars = 0;
+
+    public ListingWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Returns an encoder of the listing charset, lines encoded with it can be written with {@link #writeEncoded}.
+     */
+    public static CharsetEncoder newEncoder() {
+        return Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    public static ListingWriter open(Path path) throws IOException {
+        return new ListingWriter(FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE));
+    }
+
+    public void write(String s) throws IOException {
+        buffer.append(s);
+        flushIfFull();
+    }
+
+    /**
+     * Writes lines encoded with {@link #newEncoder} from the given number of chars, as they are.
+     */
+    public void writeEncoded(ByteBuffer encoded, int chars) throws IOException {
+        flushBuffer();
+        while (encoded.hasRemaining()) {
+            channel.write(encoded);
+        }
+        flushedChars += chars;
+    }
+
+    public void newLine() throws IOException {
+        buffer.append(System.lineSeparator());
+        flushIfFull();
+    }
+
+    public void writeText(DecodedText text) throws IOException {
+        writeText(text, 0, text.size());
+    }
+
+    /**
+     * Writes commands [from, to) of the text.
+     */
+    public void writeText(DecodedText text, int from, int to) throws IOException {
+        text.resolveLabels();
+        Metrics.Span span = Metrics.begin(Metrics.Stage.RENDER_TEXT);
+        long start = charCount();
+        for (int i = from; i < to; i++) {
+            text.appendCommand(buffer, i);
+            newLine();
+        }
+        Metrics.end(span, charCount() - start);
+    }
+
+    public void writeSymtab(List<ElfSymtabEntry> symtab) throws IOException {
+        Metrics.Span span = Metrics.begin(Metrics.Stage.RENDER_SYMTAB);
+        long start = charCount();
+        Utils.appendSymtabHeader(buffer);
+        newLine();
+        for (int i = 0; i < symtab.size(); i++) {
+            Utils.appendSymtabEntry(buffer, i, symtab.get(i));
+            newLine();
+        }
+        Metrics.end(span, charCount() - start);
+    }
+
+    /**
+     * Writes the whole result: disassembled .text followed by parsed .symtab.
+     */
+    public void writeListing(DecodedText text, List<ElfSymtabEntry> symtab) throws IOException {
+        write(".text");
+        newLine();
+        writeText(text);
+        newLine();
+        write(".symtab");
+        newLine();
+        writeSymtab(symtab);
+    }
+
+    /**
+     * Same as {@link #writeListing(DecodedText, List)} for commands of several sections in address order,
+     * every section gets its own part named after it.
+     */
+    public void writeSections(DecodedText text, List<ElfSectionInfo> sections, List<ElfSymtabEntry> symtab)
+            throws IOException {
+        int from = 0;
+        for (int s = 0; s < sections.size(); s++) {
+            int to = from;
+            long end = s + 1 < sections.size() ? sections.get(s + 1).sh_addr : Long.MAX_VALUE;
+            while (to < text.size() && text.getAddress(to) < end) {
+                to++;
+            }
+            write(sections.get(s).name);
+            newLine();
+            writeText(text, from, to);
+            newLine();
+            from = to;
+        }
+        write(".symtab");
+        newLine();
+        writeSymtab(symtab);
+    }
+
+    /**
+     * Returns the number of characters written so far, including the buffered ones.
+     */
+    public long charCount() {
+        return flushedChars + buffer.length();
+    }
+
+    private void flushIfFull() throws IOException {
+        if (buffer.length() >= FLUSH_THRESHOLD) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        CharBuffer chars = CharBuffer.wrap(buffer);
+        while (true) {
+            CoderResult result = encoder.encode(chars, bytes, false);
+            writeBytes();
+            if (result.isUnderflow()) {
+                break;
+            }
+        }
+        flushedChars += buffer.length();
+        buffer.setLength(0);
+    }
+
+    private void writeBytes() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+        bytes.clear();
+    }
+
+    public void flush() throws IOException {
+        flushBuffer();
+        encoder.encode(CharBuffer.allocate(0), bytes, true);
+        encoder.flush(bytes);
+        writeBytes();
+        encoder.reset();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
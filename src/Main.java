@@ -1,78 +1,219 @@
-import java.io.*;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.List;
 
 public class Main {
     public static void main(String[] args) {
-        if (args.length != 2) {
-            System.out.println("Incorrect arguments!\nYou should pass input and output files.");
+        Options options = Options.parse(args);
+        if (options == null) {
+            return;
         }
-        try {
-            byte[] data = Files.readAllBytes(Path.of(args[0]));
-            if (!ElfParser.checkIfElf(data)) {
-                System.out.println("Input must be elf file!");
-                return;
+        if (options.metricsFile != null) {
+            Metrics.enable();
+        }
+        if (options.serverPort >= 0) {
+            if (options.metricsFile != null) {
+                // the server runs until the process is stopped, totals of all requests are written then
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> writeMetrics(options)));
             }
-            ElfMetadata header = ElfParser.parseHeader(data);
-            if (header.e_machine != 0xf3) {
-                System.out.println("Only Risc-V elf files are supported!");
+            DisasmServer.run(options);
+            return;
+        }
+        run(options);
+        if (options.metricsFile != null) {
+            writeMetrics(options);
+        }
+    }
+
+    private static void writeMetrics(Options options) {
+        try {
+            Metrics.writeSummary(Path.of(options.metricsFile));
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing metrics: " + e.getMessage());
+        }
+    }
+
+    private static void run(Options options) {
+        if (options.batch) {
+            BatchRunner.run(options);
+            return;
+        }
+        try {
+            if (options.diffBase != null) {
+                diff(options);
                 return;
             }
-            if (header.ei_class != 0x1 || header.e_shentsize != 40) {
-                System.out.println("Only 32 bit elf files are supported!");
+            if (options.stats) {
+                stats(options);
                 return;
             }
-            List<ElfSectionInfo> sectionHeaders = ElfParser.parseSectionHeaders(data, header);
-            ElfSectionInfo textHeader = null;
-            ElfSectionInfo symtabHeader = null;
-            int strtabOffset = -1;
-            for (var section : sectionHeaders) {
-                if (section.name.equals(".text")) {
-                    textHeader = section;
-                } else if (section.name.equals(".symtab")) {
-                    symtabHeader = section;
-                } else if (section.name.equals(".strtab")) {
-                    strtabOffset = (int)section.sh_offset;
-                }
-            }
-            if (textHeader == null) {
-                System.out.println("No .text section found in elf file!");
+            if (options.refsTo != null) {
+                refs(options);
                 return;
             }
-            if (symtabHeader == null) {
-                System.out.println("No .symtab section found in elf file!");
+            if (options.isQuery()) {
+                query(options);
                 return;
             }
-            if (symtabHeader.sh_entsize != 16) {
-                System.out.println("Incorrect elf file! SH_ENTSIZE of .symtab must be equal to 16");
+            ListingCache cache = options.openCache();
+            ElfFile elf = ElfFile.open(Path.of(options.input));
+            // the binary listing, graphs and references are not cached, they need decoded commands,
+            // and the cache key covers only .text
+            String cacheKey = cache == null || options.binaryOutput != null || options.cfgFormat != null
+                    || options.xrefFile != null || options.allSections ? null : ListingCache.key(elf);
+            if (cacheKey != null && cache.copyTo(cacheKey, Path.of(options.output))) {
+                cache.saveStats();
                 return;
             }
-            if (strtabOffset == -1) {
-                System.out.println("No .strtab section found in elf file!");
-                return;
+            DecodedText textSectionDisasm;
+            List<ElfSectionInfo> sections = null;
+            IncrementalDisasm incremental = null;
+            if (options.allSections) {
+                sections = elf.executableSections();
+                int threads = options.threads > 1 ? options.threads : Runtime.getRuntime().availableProcessors();
+                textSectionDisasm = Disasm.disasmSections(
+                        elf.data, sections, Utils.symtabToIndex(elf.symtab), threads
+                );
+            } else if (options.incrementalState != null) {
+                incremental = new IncrementalDisasm();
+                textSectionDisasm = incremental.disasm(
+                        elf, Utils.symtabToIndex(elf.symtab), Path.of(options.incrementalState)
+                );
+            } else {
+                textSectionDisasm = Disasm.disasm(
+                        elf.data, elf.textHeader, Utils.symtabToIndex(elf.symtab), options.threads
+                );
             }
 
-            List<ElfSymtabEntry> symtab = ElfParser.parseSymtab(data, symtabHeader, strtabOffset);
-
-            List<AsmCommand> textSectionDisasm = Disasm.disasm(data, textHeader, Utils.symtabToMap(symtab));
-            String disasmResult = Utils.disasmToString(textSectionDisasm);
-
-            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[1])))) {
-                writer.write(".text");
-                writer.newLine();
-                writer.write(disasmResult);
-                writer.newLine();
-                writer.write(".symtab");
-                writer.newLine();
-                writer.write(Utils.symtabToString(symtab));
+            try (ListingWriter writer = ListingWriter.open(Path.of(options.output))) {
+                if (options.cfgFormat != null) {
+                    writeGraph(writer, ControlFlowGraph.build(textSectionDisasm, elf.symtab), options.cfgFormat);
+                    if (incremental != null) {
+                        incremental.saveState();
+                    }
+                } else if (sections != null) {
+                    writer.writeSections(textSectionDisasm, sections, elf.symtab);
+                } else if (incremental != null) {
+                    incremental.writeListing(writer, elf.symtab);
+                } else {
+                    writer.writeListing(textSectionDisasm, elf.symtab);
+                }
+                if (options.binaryOutput != null) {
+                    BinaryListing.write(Path.of(options.binaryOutput), textSectionDisasm, elf);
+                }
+                if (options.xrefFile != null) {
+                    XrefIndex.build(textSectionDisasm, ListingCache.key(elf)).write(Path.of(options.xrefFile));
+                }
             } catch (IOException e) {
                 System.out.println("An error occurred while writing output: " + e.getMessage());
+                return;
             }
+            if (cacheKey != null) {
+                cache.store(cacheKey, Path.of(options.output));
+                cache.saveStats();
+            }
+        } catch (ElfFormatException e) {
+            System.out.println(e.getMessage());
         } catch (IOException e) {
             System.out.println("An error occurred while reading input file: " + e.getMessage());
         } catch (Exception e) {
             System.out.println("An error occurred: " + e.getMessage());
         }
     }
+
+    private static void query(Options options) throws IOException, ElfFormatException {
+        ElfFile elf = ElfFile.open(Path.of(options.input));
+        DisasmQuery query = new DisasmQuery(elf);
+        DecodedText text;
+        if (options.function != null) {
+            text = query.function(options.function);
+            if (text == null) {
+                System.out.println("No function " + options.function + " found in .symtab!");
+                return;
+            }
+        } else {
+            text = query.range(options.rangeStart, options.rangeEnd);
+        }
+        try (ListingWriter writer = ListingWriter.open(Path.of(options.output))) {
+            writer.write(".text");
+            writer.newLine();
+            writer.writeText(text);
+            if (options.binaryOutput != null) {
+                BinaryListing.write(Path.of(options.binaryOutput), text, elf);
+            }
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing output: " + e.getMessage());
+        }
+    }
+
+    private static void diff(Options options) throws IOException, ElfFormatException {
+        ElfFile before = ElfFile.open(Path.of(options.diffBase));
+        ElfFile after = ElfFile.open(Path.of(options.input));
+        int threads = options.threads > 1 ? options.threads : Runtime.getRuntime().availableProcessors();
+        FunctionDiff diff = FunctionDiff.compare(before, after, threads);
+        try (ListingWriter writer = ListingWriter.open(Path.of(options.output))) {
+            writer.write("--- " + options.diffBase);
+            writer.newLine();
+            writer.write("+++ " + options.input);
+            writer.newLine();
+            diff.write(writer);
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing output: " + e.getMessage());
+        }
+    }
+
+    private static void stats(Options options) throws IOException, ElfFormatException {
+        ElfFile elf = ElfFile.open(Path.of(options.input));
+        InstructionStats stats = InstructionStats.collect(elf);
+        try (ListingWriter writer = ListingWriter.open(Path.of(options.output))) {
+            stats.write(writer);
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing output: " + e.getMessage());
+        }
+    }
+
+    private static void refs(Options options) throws IOException, ElfFormatException {
+        ElfFile elf = ElfFile.open(Path.of(options.input));
+        long target;
+        try {
+            target = Long.decode(options.refsTo);
+        } catch (NumberFormatException e) {
+            target = new DisasmQuery(elf).functionAddress(options.refsTo);
+            if (target < 0) {
+                System.out.println("No function " + options.refsTo + " found in .symtab!");
+                return;
+            }
+        }
+        String key = ListingCache.key(elf);
+        XrefIndex index = null;
+        if (options.xrefFile != null && Files.exists(Path.of(options.xrefFile))) {
+            index = XrefIndex.open(Path.of(options.xrefFile));
+            if (!index.getKey().equals(key)) {
+                index = null; // built for another file
+            }
+        }
+        if (index == null) {
+            DecodedText text = Disasm.disasm(
+                    elf.data, elf.textHeader, Utils.symtabToIndex(elf.symtab), options.threads
+            );
+            index = XrefIndex.build(text, key);
+            if (options.xrefFile != null) {
+                index.write(Path.of(options.xrefFile));
+            }
+        }
+        try (ListingWriter writer = ListingWriter.open(Path.of(options.output))) {
+            index.writeRefs(writer, target);
+        } catch (IOException e) {
+            System.out.println("An error occurred while writing output: " + e.getMessage());
+        }
+    }
+
+    private static void writeGraph(ListingWriter writer, ControlFlowGraph graph, String format) throws IOException {
+        switch (format) {
+            case "dot" -> graph.writeDot(writer);
+            case "json" -> graph.writeJson(writer);
+            default -> graph.writeCounts(writer);
+        }
+    }
 }
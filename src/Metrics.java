@@ -0,0 +1,229 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Wall time, processed bytes and allocations of the pipeline stages, accumulated over the run.
+ * A stage is measured when the summary is enabled with {@link #enable()} or when a JFR recording has
+ * the {@code riscv.Stage} event enabled, otherwise {@link #begin} returns null and measuring costs two checks
+ * per stage. Allocations are counted on the thread running the stage, work handed to other threads is not seen.
+ */
+public class Metrics {
+    public enum Stage {
+        PARSE_HEADER("parseHeader"),
+        PARSE_SECTION_HEADERS("parseSectionHeaders"),
+        PARSE_SYMTAB("parseSymtab"),
+        DISASM("disasm"),
+        RESOLVE_LABELS("resolveLabels"),
+        RENDER_TEXT("renderText"),
+        RENDER_SYMTAB("renderSymtab");
+
+        public final String text;
+
+        Stage(String text) {
+            this.text = text;
+        }
+    }
+
+    @Name("riscv.Stage")
+    @Label("Disassembly Stage")
+    @Category("RISC-V Disassembler")
+    static class StageEvent extends Event {
+        @Label("Stage")
+        String stage;
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+        @Label("Commands")
+        long commands;
+        @Label("Compressed Commands")
+        long compressedCommands;
+        @Label("Unknown Commands")
+        long unknownCommands;
+    }
+
+    public static class Span {
+        private final Stage stage;
+        private final StageEvent event;
+        private final long start;
+        private final long allocated;
+
+        private Span(Stage stage, StageEvent event) {
+            this.stage = stage;
+            this.event = event;
+            this.allocated = allocatedBytes();
+            event.begin();
+            this.start = System.nanoTime();
+        }
+    }
+
+    // the management bean is looked up only once something is measured, it takes a while to start
+    private static class Allocations {
+        final static com.sun.management.ThreadMXBean THREADS =
+                ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads
+                        && threads.isThreadAllocatedMemorySupported() ? threads : null;
+    }
+
+    private final static int CALLS = 0;
+    private final static int NANOS = 1;
+    private final static int BYTES = 2;
+    private final static int ALLOCATED = 3;
+    private final static int COMPRESSED = 4;
+    private final static int UNCOMPRESSED = 5;
+    private final static int UNKNOWN_COMPRESSED = 6;
+    private final static int UNKNOWN_UNCOMPRESSED = 7;
+
+    private static volatile boolean enabled = false;
+    private final static long[][] totals = new long[Stage.values().length][8];
+
+    public static void enable() {
+        enabled = true;
+    }
+
+    private static long allocatedBytes() {
+        var threads = Allocations.THREADS;
+        return threads == null ? 0 : threads.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * Starts measuring a stage, returns null if nothing is measured.
+     */
+    public static Span begin(Stage stage) {
+        // event classes are not touched before JFR is started, loading them pulls in much of JFR
+        if (!enabled && !FlightRecorder.isInitialized()) {
+            return null;
+        }
+        StageEvent event = new StageEvent();
+        if (!enabled && !event.isEnabled()) {
+            return null;
+        }
+        return new Span(stage, event);
+    }
+
+    /**
+     * Ends the stage that processed the given number of bytes.
+     */
+    public static void end(Span span, long bytes) {
+        if (span != null) {
+            record(span, bytes, System.nanoTime() - span.start, new long[4]);
+        }
+    }
+
+    /**
+     * Ends decoding of commands of the text, which are counted by length and the unknown ones among them.
+     */
+    public static void endDisasm(Span span, ByteBuffer file, ElfSectionInfo textHeader, DecodedText text) {
+        if (span != null) {
+            endDisasm(span, file, List.of(textHeader), text);
+        }
+    }
+
+    /**
+     * Same as {@link #endDisasm(Span, ByteBuffer, ElfSectionInfo, DecodedText)} for commands of several
+     * sections in address order.
+     */
+    public static void endDisasm(Span span, ByteBuffer file, List<ElfSectionInfo> sections, DecodedText text) {
+        if (span == null) {
+            return;
+        }
+        // counted after the stage is timed, so the count doesn't slow the decoder itself
+        long nanos = System.nanoTime() - span.start;
+        long[] commands = new long[4];
+        long bytes = 0;
+        int section = 0;
+        for (int i = 0; i < text.size(); i++) {
+            long address = text.getAddress(i);
+            while (section + 1 < sections.size() && address >= sections.get(section + 1).sh_addr) {
+                section++;
+            }
+            ElfSectionInfo header = sections.get(section);
+            int offset = (int) (address - header.sh_addr + header.sh_offset);
+            int kind = (file.get(offset) & 0x3) == 3 ? 1 : 0;
+            commands[kind]++;
+            if (text.getMnemonic(i) == Mnemonic.UNKNOWN) {
+                commands[2 + kind]++;
+            }
+        }
+        for (var header : sections) {
+            bytes += header.sh_size;
+        }
+        record(span, bytes, nanos, commands);
+    }
+
+    private static void record(Span span, long bytes, long nanos, long[] commands) {
+        long allocated = allocatedBytes() - span.allocated;
+        StageEvent event = span.event;
+        event.end();
+        if (event.shouldCommit()) {
+            event.stage = span.stage.text;
+            event.bytes = bytes;
+            event.allocated = allocated;
+            event.commands = commands[0] + commands[1];
+            event.compressedCommands = commands[0];
+            event.unknownCommands = commands[2] + commands[3];
+            event.commit();
+        }
+        if (enabled) {
+            synchronized (totals) {
+                long[] stage = totals[span.stage.ordinal()];
+                stage[CALLS]++;
+                stage[NANOS] += nanos;
+                stage[BYTES] += bytes;
+                stage[ALLOCATED] += allocated;
+                stage[COMPRESSED] += commands[0];
+                stage[UNCOMPRESSED] += commands[1];
+                stage[UNKNOWN_COMPRESSED] += commands[2];
+                stage[UNKNOWN_UNCOMPRESSED] += commands[3];
+            }
+        }
+    }
+
+    /**
+     * Returns the totals of all stages as JSON. Command counts and rates are given for the decoding stage.
+     */
+    public static String summary() {
+        StringBuilder res = new StringBuilder();
+        res.append("{\"stages\": [").append(System.lineSeparator());
+        synchronized (totals) {
+            Stage[] stages = Stage.values();
+            for (Stage stage : stages) {
+                long[] t = totals[stage.ordinal()];
+                res.append("  {\"stage\": \"").append(stage.text).append('"')
+                        .append(", \"calls\": ").append(t[CALLS])
+                        .append(", \"wallNanos\": ").append(t[NANOS])
+                        .append(", \"bytes\": ").append(t[BYTES])
+                        .append(", \"allocatedBytes\": ").append(t[ALLOCATED]);
+                if (stage == Stage.DISASM) {
+                    double seconds = Math.max(t[NANOS], 1) / 1e9;
+                    res.append(", \"compressedCommands\": ").append(t[COMPRESSED])
+                            .append(", \"uncompressedCommands\": ").append(t[UNCOMPRESSED])
+                            .append(", \"unknownCompressedCommands\": ").append(t[UNKNOWN_COMPRESSED])
+                            .append(", \"unknownUncompressedCommands\": ").append(t[UNKNOWN_UNCOMPRESSED])
+                            .append(", \"compressedPerSecond\": ").append(Math.round(t[COMPRESSED] / seconds))
+                            .append(", \"uncompressedPerSecond\": ").append(Math.round(t[UNCOMPRESSED] / seconds));
+                }
+                res.append('}').append(stage.ordinal() + 1 < stages.length ? "," : "")
+                        .append(System.lineSeparator());
+            }
+        }
+        res.append("]}").append(System.lineSeparator());
+        return res.toString();
+    }
+
+    public static void writeSummary(Path path) throws IOException {
+        Files.writeString(path, summary());
+    }
+}
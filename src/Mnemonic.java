@@ -0,0 +1,100 @@
+public enum Mnemonic {
+    UNKNOWN("unknown_command", OperandFormat.NONE),
+
+    // rv32i
+    BEQ("beq", OperandFormat.RS1_RS2_TARGET),
+    BNE("bne", OperandFormat.RS1_RS2_TARGET),
+    BLT("blt", OperandFormat.RS1_RS2_TARGET),
+    BGE("bge", OperandFormat.RS1_RS2_TARGET),
+    BLTU("bltu", OperandFormat.RS1_RS2_TARGET),
+    BGEU("bgeu", OperandFormat.RS1_RS2_TARGET),
+    JALR("jalr", OperandFormat.RD_RS1_IMM),
+    JAL("jal", OperandFormat.RD_TARGET),
+    LUI("lui", OperandFormat.RD_IMM),
+    AUIPC("auipc", OperandFormat.RD_IMM),
+    ADDI("addi", OperandFormat.RD_RS1_IMM),
+    SLTI("slti", OperandFormat.RD_RS1_IMM),
+    SLTIU("sltiu", OperandFormat.RD_RS1_IMM),
+    XORI("xori", OperandFormat.RD_RS1_IMM),
+    ORI("ori", OperandFormat.RD_RS1_IMM),
+    ANDI("andi", OperandFormat.RD_RS1_IMM),
+    SLLI("slli", OperandFormat.RD_RS1_SHAMT),
+    SRLI("srli", OperandFormat.RD_RS1_SHAMT),
+    SRAI("srai", OperandFormat.RD_RS1_SHAMT),
+    ADD("add", OperandFormat.RD_RS1_RS2),
+    SUB("sub", OperandFormat.RD_RS1_RS2),
+    SLL("sll", OperandFormat.RD_RS1_RS2),
+    SLT("slt", OperandFormat.RD_RS1_RS2),
+    SLTU("sltu", OperandFormat.RD_RS1_RS2),
+    XOR("xor", OperandFormat.RD_RS1_RS2),
+    SRL("srl", OperandFormat.RD_RS1_RS2),
+    SRA("sra", OperandFormat.RD_RS1_RS2),
+    OR("or", OperandFormat.RD_RS1_RS2),
+    AND("and", OperandFormat.RD_RS1_RS2),
+    LB("lb", OperandFormat.RD_MEM),
+    LH("lh", OperandFormat.RD_MEM),
+    LW("lw", OperandFormat.RD_MEM),
+    LBU("lbu", OperandFormat.RD_MEM),
+    LHU("lhu", OperandFormat.RD_MEM),
+    SB("sb", OperandFormat.RS2_MEM),
+    SH("sh", OperandFormat.RS2_MEM),
+    SW("sw", OperandFormat.RS2_MEM),
+    FENCE("fence", OperandFormat.FENCE),
+    FENCE_I("fence.i", OperandFormat.NONE),
+    ECALL("ecall", OperandFormat.NONE),
+    EBREAK("ebreak", OperandFormat.NONE),
+    CSRRW("csrrw", OperandFormat.RD_CSR_RS1),
+    CSRRS("csrrs", OperandFormat.RD_CSR_RS1),
+    CSRRC("csrrc", OperandFormat.RD_CSR_RS1),
+    CSRRWI("csrrwi", OperandFormat.RD_CSR_RS1),
+    CSRRSI("csrrsi", OperandFormat.RD_CSR_RS1),
+    CSRRCI("csrrci", OperandFormat.RD_CSR_RS1),
+
+    // rv32m
+    MUL("mul", OperandFormat.RD_RS1_RS2),
+    MULH("mulh", OperandFormat.RD_RS1_RS2),
+    MULHSU("mulhsu", OperandFormat.RD_RS1_RS2),
+    MULHU("mulhu", OperandFormat.RD_RS1_RS2),
+    DIV("div", OperandFormat.RD_RS1_RS2),
+    DIVU("divu", OperandFormat.RD_RS1_RS2),
+    REM("rem", OperandFormat.RD_RS1_RS2),
+    REMU("remu", OperandFormat.RD_RS1_RS2),
+
+    // rvc
+    ILLEGAL("illegal", OperandFormat.NONE),
+    C_ADDI4SPN("c.addi4spn", OperandFormat.RD_RS1_IMM),
+    C_LW("c.lw", OperandFormat.RD_MEM),
+    C_SW("c.sw", OperandFormat.RS2_MEM),
+    C_NOP("c.nop", OperandFormat.NONE),
+    C_ADDI("c.addi", OperandFormat.RD_IMM),
+    C_JAL("c.jal", OperandFormat.TARGET),
+    C_LI("c.li", OperandFormat.RD_IMM),
+    C_ADDI16SP("c.addi16sp", OperandFormat.RD_RS1_IMM),
+    C_LUI("c.lui", OperandFormat.RD_IMM),
+    C_SRLI("c.srli", OperandFormat.RD_IMM),
+    C_SRAI("c.srai", OperandFormat.RD_IMM),
+    C_ANDI("c.andi", OperandFormat.RD_IMM),
+    C_SUB("c.sub", OperandFormat.RD_RS2),
+    C_XOR("c.xor", OperandFormat.RD_RS2),
+    C_OR("c.or", OperandFormat.RD_RS2),
+    C_AND("c.and", OperandFormat.RD_RS2),
+    C_J("c.j", OperandFormat.TARGET),
+    C_BEQZ("c.beqz", OperandFormat.RS1_TARGET),
+    C_BNEZ("c.bnez", OperandFormat.RS1_TARGET),
+    C_SLLI("c.slli", OperandFormat.RD_IMM),
+    C_LWSP("c.lwsp", OperandFormat.RD_MEM),
+    C_JR("c.jr", OperandFormat.RS1),
+    C_MV("c.mv", OperandFormat.RD_RS2),
+    C_EBREAK("c.ebreak", OperandFormat.NONE),
+    C_JALR("c.jalr", OperandFormat.RS1),
+    C_ADD("c.add", OperandFormat.RD_RS2),
+    C_SWSP("c.swsp", OperandFormat.RS2_MEM);
+
+    public final String text;
+    public final OperandFormat format;
+
+    Mnemonic(String text, OperandFormat format) {
+        this.text = text;
+        this.format = format;
+    }
+}
@@ -0,0 +1,31 @@
+import java.util.Arrays;
+
+public enum OperandFormat {
+    NONE(),                                                         // ecall
+    RD_RS1_RS2(Operand.RD, Operand.RS1, Operand.RS2),               // add rd, rs1, rs2
+    RD_RS1_IMM(Operand.RD, Operand.RS1, Operand.IMM),               // addi rd, rs1, imm
+    RD_RS1_SHAMT(Operand.RD, Operand.RS1, Operand.IMM),             // slli rd, rs1, shamt
+    RD_IMM(Operand.RD, Operand.IMM),                                // lui rd, imm
+    RD_MEM(Operand.RD, Operand.MEM),                                // lw rd, imm(rs1)
+    RS2_MEM(Operand.RS2, Operand.MEM),                              // sw rs2, imm(rs1)
+    RS1_RS2_TARGET(Operand.RS1, Operand.RS2, Operand.TARGET),       // beq rs1, rs2, label
+    RD_TARGET(Operand.RD, Operand.TARGET),                          // jal rd, label
+    FENCE(Operand.FENCE_PRED, Operand.FENCE_SUCC),                  // fence pred, succ
+    RD_CSR_RS1(Operand.RD, Operand.IMM, Operand.RS1),               // csrrw rd, csr, rs1
+    RD_RS2(Operand.RD, Operand.RS2),                                // c.mv rd, rs2
+    RS1(Operand.RS1),                                               // c.jr rs1
+    RS1_TARGET(Operand.RS1, Operand.TARGET),                        // c.beqz rs1, label
+    TARGET(Operand.TARGET);                                         // c.j label
+
+    public enum Operand {
+        RD, RS1, RS2, IMM, MEM, TARGET, FENCE_PRED, FENCE_SUCC
+    }
+
+    public final Operand[] operands;
+    public final boolean hasTarget;
+
+    OperandFormat(Operand... operands) {
+        this.operands = operands;
+        this.hasTarget = Arrays.asList(operands).contains(Operand.TARGET);
+    }
+}
@@ -0,0 +1,120 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+public class Options {
+    public String input;
+    public String output;
+    public int threads = 1;
+    public boolean batch = false;
+    public int serverPort = -1;
+    public String cacheDir = null;
+    public long cacheSizeMb = 1024;
+    public String incrementalState = null;
+    public String function = null;
+    public long rangeStart = -1;
+    public long rangeEnd = -1;
+    public String binaryOutput = null;
+    public String cfgFormat = null;
+    public String xrefFile = null;
+    public String refsTo = null;
+    public String metricsFile = null;
+    public boolean stats = false;
+    public boolean allSections = false;
+    public String diffBase = null;
+
+    private static final String USAGE = """
+            Usage: Main [options] <input elf> <output file>
+                   Main --batch [options] <directory | glob | @manifest> <output directory>
+                   Main --server <port> [options]
+            Options:
+              --threads <n>  decode .text on n threads, in batch mode process n files at once,
+                             in server mode handle n requests at once
+              --cache <dir>  reuse listings of files with the same code and symbols
+              --cache-size <MB>  limit of the cache size, 1024 by default
+              --incremental <state file>  decode again only functions changed since the run
+                             that wrote the state file, the state file is then updated
+              --function <name>  disassemble only the function with this name
+              --range <start>:<end>  disassemble only commands at addresses [start, end),
+                             addresses are decimal or 0x-prefixed hexadecimal
+              --binary <file>  also write decoded commands in the compact binary format
+              --cfg <dot | json | counts>  write control-flow graphs of functions instead of the listing
+              --xrefs <file>  also write the index of references to every branch, jump and call target
+              --refs-to <address | name>  write only references to the address or function; with --xrefs
+                             the index is read from the file if it was built for the same input
+              --all-sections  disassemble every executable section, not only .text, on all cores
+                             unless --threads is given; can't be combined with --incremental, --binary,
+                             --xrefs, --stats or queries
+              --diff <old elf>  write functions added, removed and changed since the old file instead
+                             of the listing, with the commands that differ in changed ones
+              --stats  write the instruction mix of .text and of every function instead of the listing
+              --metrics <file>  write time, bytes, commands and allocations of every stage as JSON,
+                             in server mode totals of all requests are written on shutdown""";
+
+    /**
+     * Returns parsed options or null if arguments are incorrect, in which case the usage is printed.
+     */
+    public static Options parse(String[] args) {
+        Options options = new Options();
+        List<String> files = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--threads" -> options.threads = Integer.parseInt(args[++i]);
+                    case "--batch" -> options.batch = true;
+                    case "--server" -> options.serverPort = Integer.parseInt(args[++i]);
+                    case "--cache" -> options.cacheDir = args[++i];
+                    case "--cache-size" -> options.cacheSizeMb = Long.parseLong(args[++i]);
+                    case "--incremental" -> options.incrementalState = args[++i];
+                    case "--function" -> options.function = args[++i];
+                    case "--binary" -> options.binaryOutput = args[++i];
+                    case "--cfg" -> options.cfgFormat = args[++i];
+                    case "--xrefs" -> options.xrefFile = args[++i];
+                    case "--refs-to" -> options.refsTo = args[++i];
+                    case "--metrics" -> options.metricsFile = args[++i];
+                    case "--stats" -> options.stats = true;
+                    case "--all-sections" -> options.allSections = true;
+                    case "--diff" -> options.diffBase = args[++i];
+                    case "--range" -> {
+                        String[] bounds = args[++i].split(":", 2);
+                        options.rangeStart = Long.decode(bounds[0]);
+                        options.rangeEnd = Long.decode(bounds[1]);
+                    }
+                    default -> files.add(args[i]);
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            files.clear();
+        }
+        int expectedFiles = options.serverPort >= 0 ? 0 : 2;
+        if (files.size() != expectedFiles || options.threads < 1
+                || options.rangeStart > options.rangeEnd || options.rangeStart < -1
+                || (options.cfgFormat != null && !List.of("dot", "json", "counts").contains(options.cfgFormat))
+                || (options.allSections && (options.incrementalState != null || options.binaryOutput != null
+                        || options.xrefFile != null || options.stats || options.refsTo != null || options.isQuery()))) {
+            System.out.println("Incorrect arguments!\nYou should pass input and output files.");
+            System.out.println(USAGE);
+            return null;
+        }
+        if (expectedFiles == 2) {
+            options.input = files.get(0);
+            options.output = files.get(1);
+        }
+        return options;
+    }
+
+    public boolean isQuery() {
+        return function != null || rangeStart >= 0;
+    }
+
+    /**
+     * Opens the cache if it is enabled, null otherwise.
+     */
+    public ListingCache openCache() throws IOException {
+        if (cacheDir == null) {
+            return null;
+        }
+        return new ListingCache(Path.of(cacheDir), cacheSizeMb << 20);
+    }
+}
@@ -0,0 +1,140 @@
+/**
+ * Names of symbols by address in an open-addressing hash table over primitive keys,
+ * so lookups on the rendering path neither box addresses nor allocate entries.
+ * Address 0 is never stored (such symbols are not used as labels) and marks empty slots.
+ * <p>
+ * Most lookups are for addresses without a symbol. They are answered by a bitset over the range of symbol
+ * addresses, which is read in order when commands are rendered one after another, instead of a hash table
+ * slot missing the cache every time.
+ */
+public class SymbolIndex {
+    private static class Filter {
+        final long base;
+        final long[] bits;
+
+        Filter(long base, long[] bits) {
+            this.base = base;
+            this.bits = bits;
+        }
+    }
+
+    private long[] keys;
+    private String[] names;
+    private int size = 0;
+    // built on the first lookup after a change, stays null if symbols are too sparse for a bitset to pay off
+    private Filter filter = null;
+    private boolean filterBuilt = false;
+
+    public SymbolIndex() {
+        this(16);
+    }
+
+    public SymbolIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(expectedSize, 8) * 2 - 1) << 1;
+        keys = new long[capacity];
+        names = new String[capacity];
+    }
+
+    private int slot(long address) {
+        int mask = keys.length - 1;
+        int i = (int) (address * 0x9E3779B97F4A7C15L >>> 32) & mask;
+        while (keys[i] != 0 && keys[i] != address) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    /**
+     * Maps the address to the name, replacing the previous name like {@link java.util.Map#put} does.
+     */
+    public void put(long address, String name) {
+        if (address == 0) {
+            throw new IllegalArgumentException("Symbols at address 0 can't be indexed");
+        }
+        int i = slot(address);
+        if (keys[i] == 0) {
+            keys[i] = address;
+            size++;
+        }
+        names[i] = name;
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+        filter = null;
+        filterBuilt = false;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        String[] oldNames = names;
+        keys = new long[oldKeys.length * 2];
+        names = new String[oldKeys.length * 2];
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != 0) {
+                int i = slot(oldKeys[j]);
+                keys[i] = oldKeys[j];
+                names[i] = oldNames[j];
+            }
+        }
+    }
+
+    private void buildFilter() {
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        for (long key : keys) {
+            if (key != 0) {
+                min = Math.min(min, key);
+                max = Math.max(max, key);
+            }
+        }
+        // one bit per 2 bytes, at most as large as the table itself
+        long bitCount = ((max - min) >>> 1) + 1;
+        if (size > 0 && bitCount <= 64L * keys.length) {
+            long[] bits = new long[(int) ((bitCount + 63) >>> 6)];
+            for (long key : keys) {
+                if (key != 0) {
+                    long bit = (key - min) >>> 1;
+                    bits[(int) (bit >>> 6)] |= 1L << bit;
+                }
+            }
+            filter = new Filter(min, bits);
+        }
+        filterBuilt = true;
+    }
+
+    /**
+     * Returns the name of the symbol at the address or null if there is none.
+     */
+    public String get(long address) {
+        if (address == 0) {
+            return null;
+        }
+        if (!filterBuilt) {
+            buildFilter();
+        }
+        Filter f = filter;
+        if (f != null) {
+            if (address < f.base) {
+                return null;
+            }
+            long bit = (address - f.base) >>> 1;
+            if (bit >= (long) f.bits.length << 6 || (f.bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return null;
+            }
+        }
+        return names[slot(address)];
+    }
+
+    public String getOrDefault(long address, String defaultName) {
+        String name = get(address);
+        return name == null ? defaultName : name;
+    }
+
+    public boolean containsKey(long address) {
+        return get(address) != null;
+    }
+
+    public int size() {
+        return size;
+    }
+}
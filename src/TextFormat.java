@@ -0,0 +1,80 @@
+/**
+ * Fixed-width number and padding writers used instead of {@link String#format} on the hot rendering path.
+ * All methods append to the given builder and produce the same text as the corresponding format specifier.
+ */
+public class TextFormat {
+    private final static char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    public static int hexLength(long value) {
+        return Math.max(1, (64 - Long.numberOfLeadingZeros(value) + 3) / 4);
+    }
+
+    public static int decimalLength(long value) {
+        int length = value < 0 ? 2 : 1;
+        long rest = value / 10;
+        while (rest != 0) {
+            rest /= 10;
+            length++;
+        }
+        return length;
+    }
+
+    public static void appendSpaces(StringBuilder res, int count) {
+        for (int i = 0; i < count; i++) {
+            res.append(' ');
+        }
+    }
+
+    // %0<width>x
+    public static void appendHex(StringBuilder res, long value, int width) {
+        int length = hexLength(value);
+        for (int i = length; i < width; i++) {
+            res.append('0');
+        }
+        for (int shift = (length - 1) * 4; shift >= 0; shift -= 4) {
+            res.append(HEX_DIGITS[(int) (value >>> shift) & 0xf]);
+        }
+    }
+
+    // %-<width>x
+    public static void appendHexLeft(StringBuilder res, long value, int width) {
+        appendHex(res, value, 0);
+        appendSpaces(res, width - hexLength(value));
+    }
+
+    // %<width>d
+    public static void appendDecimal(StringBuilder res, long value, int width) {
+        appendSpaces(res, width - decimalLength(value));
+        res.append(value);
+    }
+
+    // %.<digits>f of numerator / denominator, both non-negative, 0 if the denominator is; rounded half up
+    public static void appendFixed(StringBuilder res, long numerator, long denominator, int digits) {
+        long scale = 1;
+        for (int i = 0; i < digits; i++) {
+            scale *= 10;
+        }
+        long scaled = denominator == 0 ? 0 : (2 * numerator * scale + denominator) / (2 * denominator);
+        res.append(scaled / scale);
+        if (digits > 0) {
+            res.append('.');
+            long fraction = scaled % scale;
+            for (int i = decimalLength(fraction); i < digits; i++) {
+                res.append('0');
+            }
+            res.append(fraction);
+        }
+    }
+
+    // %<width>s
+    public static void appendRight(StringBuilder res, String s, int width) {
+        appendSpaces(res, width - s.length());
+        res.append(s);
+    }
+
+    // %-<width>s
+    public static void appendLeft(StringBuilder res, String s, int width) {
+        res.append(s);
+        appendSpaces(res, width - s.length());
+    }
+}
@@ -1,27 +1,42 @@
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class Utils {
-    public static String symtabToString(List<ElfSymtabEntry> symtab) {
-        StringBuilder res = new StringBuilder();
+    public static void appendSymtabHeader(StringBuilder res) {
         res.append(String.format(
                 "%s %-15s %7s %-8s %-8s %-8s %6s %s",
                 "Symbol", "Value", "Size", "Type", "Bind", "Vis", "Index", "Name"
         ));
+    }
+
+    public static void appendSymtabEntry(StringBuilder res, int index, ElfSymtabEntry entry) {
+        res.append('[');
+        TextFormat.appendDecimal(res, index, 4);
+        res.append("] ");
+        entry.appendTo(res);
+    }
+
+    public static String symtabToString(List<ElfSymtabEntry> symtab) {
+        Metrics.Span span = Metrics.begin(Metrics.Stage.RENDER_SYMTAB);
+        StringBuilder res = new StringBuilder();
+        appendSymtabHeader(res);
         res.append(System.lineSeparator());
         for (int i = 0; i < symtab.size(); i++) {
-            res.append(String.format("[%4d] %s", i, symtab.get(i)));
+            appendSymtabEntry(res, i, symtab.get(i));
             res.append(System.lineSeparator());
         }
+        Metrics.end(span, res.length());
         return res.toString();
     }
 
-    public static Map<Long, String> symtabToMap(List<ElfSymtabEntry> symtab) {
-        Map<Long, String> res = new HashMap<>();
-        for (var entry : symtab) {
-            if (!entry.name.isEmpty() && entry.st_value != 0 && entry.getTypeString().equals("FUNC")) {
-                res.put(entry.st_value, entry.name);
+    public static SymbolIndex symtabToIndex(ElfSymtab symtab) {
+        SymbolIndex res = new SymbolIndex();
+        for (int i = 0; i < symtab.size(); i++) {
+            if (symtab.getType(i) != ElfSymtab.STT_FUNC || symtab.getValue(i) == 0) {
+                continue;
+            }
+            String name = symtab.getName(i);
+            if (!name.isEmpty()) {
+                res.put(symtab.getValue(i), name);
             }
         }
         return res;
@@ -35,4 +50,16 @@ public class Utils {
         }
         return res.toString();
     }
+
+    public static String disasmToString(DecodedText text) {
+        text.resolveLabels();
+        Metrics.Span span = Metrics.begin(Metrics.Stage.RENDER_TEXT);
+        StringBuilder res = new StringBuilder();
+        for (int i = 0; i < text.size(); i++) {
+            text.appendCommand(res, i);
+            res.append(System.lineSeparator());
+        }
+        Metrics.end(span, res.length());
+        return res.toString();
+    }
 }
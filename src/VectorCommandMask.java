@@ -0,0 +1,32 @@
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Vector API part of {@link CommandBoundaries}, loaded only when the {@code jdk.incubator.vector} module is present.
+ */
+class VectorCommandMask {
+    // at most 64 lanes, so that a vector mask fits in a long
+    private final static VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED.length() > 64
+            ? ShortVector.SPECIES_512 : ShortVector.SPECIES_PREFERRED;
+
+    /**
+     * Sets mask bits of halfwords of the section that start a 32-bit command, a vector of halfwords at a time,
+     * and returns the first halfword left for the scalar loop.
+     */
+    static int fill(ByteBuffer data, ElfSectionInfo section, long[] mask) {
+        int start = (int) section.sh_offset;
+        int size = (int) section.sh_size;
+        int lanes = SPECIES.length();
+        int h = 0;
+        // lanes divide 64, so the bits of a vector never cross a word of the mask
+        for (; 2 * (h + lanes) <= size; h += lanes) {
+            ShortVector halfwords = ShortVector.fromByteBuffer(SPECIES, data, start + 2 * h, ByteOrder.LITTLE_ENDIAN);
+            long bits = halfwords.and((short) 0x3).eq((short) 0x3).toLong();
+            mask[h >>> 6] |= bits << (h & 63);
+        }
+        return h;
+    }
+}
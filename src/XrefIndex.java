@@ -0,0 +1,246 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Cross references of .text: for every address targeted by a command with a label operand, the addresses
+ * of those commands and the kind of reference. Columns are primitive and grouped by target in address order,
+ * so references to target {@code t} are {@code [getFirstRef(t), getFirstRef(t + 1))}, sorted by source.
+ * <pre>
+ * file, little-endian:
+ *   0  u32 magic "RVXR"        4  u16 version       6  u16 reserved
+ *   8  u32 target count       12  u32 reference count
+ *  16  64 bytes key of the elf file the index was built for, see {@link ListingCache#key}
+ *  80  u32 target addresses, u32 first reference of every target and one past the last,
+ *      u32 source addresses, u8 kinds
+ * </pre>
+ * An index read from a file stays mapped, queries don't load it into memory.
+ */
+public class XrefIndex {
+    public final static int MAGIC = 0x52585652;
+    public final static int VERSION = 1;
+    public final static byte CALL = 0;
+    public final static byte JUMP = 1;
+    public final static byte BRANCH = 2;
+    private final static String[] KIND_NAMES = {"call", "jump", "branch"};
+    private final static int KEY_SIZE = 64;
+    private final static int HEADER_SIZE = 16 + KEY_SIZE;
+
+    private final String key;
+    private final IntBuffer targets;
+    private final IntBuffer firstRefs;
+    private final IntBuffer sources;
+    private final ByteBuffer kinds;
+
+    private XrefIndex(String key, IntBuffer targets, IntBuffer firstRefs, IntBuffer sources, ByteBuffer kinds) {
+        this.key = key;
+        this.targets = targets;
+        this.firstRefs = firstRefs;
+        this.sources = sources;
+        this.kinds = kinds;
+    }
+
+    /**
+     * Collects references of the decoded text, the key identifies the elf file it was decoded from.
+     * Targets outside the 32-bit address space are skipped.
+     */
+    public static XrefIndex build(DecodedText text, String key) {
+        int count = 0;
+        for (int i = 0; i < text.size(); i++) {
+            if (text.getMnemonic(i).format.hasTarget && (text.getTarget(i) >>> 32) == 0) {
+                count++;
+            }
+        }
+        // target in the high bits and command index in the low ones: sorting groups references by target
+        // and keeps them in source order; the sign bit is flipped so that signed order is unsigned order
+        long[] refs = new long[count];
+        count = 0;
+        for (int i = 0; i < text.size(); i++) {
+            if (text.getMnemonic(i).format.hasTarget && (text.getTarget(i) >>> 32) == 0) {
+                refs[count++] = (text.getTarget(i) << 32 | i) ^ Long.MIN_VALUE;
+            }
+        }
+        Arrays.parallelSort(refs);
+
+        int[] sources = new int[count];
+        byte[] kinds = new byte[count];
+        int[] targets = new int[count];
+        int[] firstRefs = new int[count + 1];
+        int targetCount = 0;
+        for (int r = 0; r < count; r++) {
+            long ref = refs[r] ^ Long.MIN_VALUE;
+            int i = (int) ref;
+            int target = (int) (ref >>> 32);
+            if (targetCount == 0 || targets[targetCount - 1] != target) {
+                targets[targetCount] = target;
+                firstRefs[targetCount++] = r;
+            }
+            sources[r] = (int) text.getAddress(i);
+            kinds[r] = kind(text.getMnemonic(i), text.getRd(i));
+        }
+        firstRefs[targetCount] = count;
+        return new XrefIndex(key, IntBuffer.wrap(targets, 0, targetCount).slice(),
+                IntBuffer.wrap(firstRefs, 0, targetCount + 1).slice(), IntBuffer.wrap(sources), ByteBuffer.wrap(kinds));
+    }
+
+    private static byte kind(Mnemonic mnemonic, int rd) {
+        return switch (mnemonic) {
+            case JAL -> rd == 0 ? JUMP : CALL;
+            case C_JAL -> CALL;
+            case C_J -> JUMP;
+            default -> BRANCH;
+        };
+    }
+
+    /**
+     * Maps an index written by {@link #write(Path)}.
+     */
+    public static XrefIndex open(Path path) throws IOException {
+        ByteBuffer data;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (data.limit() < HEADER_SIZE || data.getInt(0) != MAGIC) {
+            throw new IOException("Not a cross reference index");
+        }
+        if (data.getShort(4) != VERSION) {
+            throw new IOException("Unsupported cross reference index version " + data.getShort(4));
+        }
+        int targetCount = data.getInt(8);
+        int refCount = data.getInt(12);
+        if ((long) HEADER_SIZE + 8L * targetCount + 4 + 5L * refCount > data.limit()) {
+            throw new IOException("Cross reference index is truncated");
+        }
+        byte[] key = new byte[KEY_SIZE];
+        data.get(16, key);
+        int offset = HEADER_SIZE;
+        IntBuffer targets = data.slice(offset, 4 * targetCount).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        offset += 4 * targetCount;
+        IntBuffer firstRefs = data.slice(offset, 4 * (targetCount + 1)).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        offset += 4 * (targetCount + 1);
+        IntBuffer sources = data.slice(offset, 4 * refCount).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        offset += 4 * refCount;
+        ByteBuffer kinds = data.slice(offset, refCount);
+        return new XrefIndex(new String(key, StandardCharsets.US_ASCII).trim(), targets, firstRefs, sources, kinds);
+    }
+
+    public void write(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC);
+            buffer.putShort((short) VERSION);
+            buffer.putShort((short) 0);
+            buffer.putInt(targetCount());
+            buffer.putInt(refCount());
+            byte[] keyBytes = Arrays.copyOf(key.getBytes(StandardCharsets.US_ASCII), KEY_SIZE);
+            buffer.put(keyBytes);
+            writeInts(channel, buffer, targets);
+            writeInts(channel, buffer, firstRefs);
+            writeInts(channel, buffer, sources);
+            for (int r = 0; r < refCount(); r++) {
+                if (!buffer.hasRemaining()) {
+                    writeBuffer(channel, buffer);
+                }
+                buffer.put(kinds.get(r));
+            }
+            writeBuffer(channel, buffer);
+        }
+    }
+
+    private static void writeInts(FileChannel channel, ByteBuffer buffer, IntBuffer ints) throws IOException {
+        for (int i = 0; i < ints.limit(); i++) {
+            if (buffer.remaining() < 4) {
+                writeBuffer(channel, buffer);
+            }
+            buffer.putInt(ints.get(i));
+        }
+    }
+
+    private static void writeBuffer(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Returns the key of the elf file the index was built for.
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public int targetCount() {
+        return targets.limit();
+    }
+
+    public int refCount() {
+        return sources.limit();
+    }
+
+    public long getTarget(int t) {
+        return Integer.toUnsignedLong(targets.get(t));
+    }
+
+    public int getFirstRef(int t) {
+        return firstRefs.get(t);
+    }
+
+    public long getSource(int r) {
+        return Integer.toUnsignedLong(sources.get(r));
+    }
+
+    public byte getKind(int r) {
+        return kinds.get(r);
+    }
+
+    public static String kindName(byte kind) {
+        return KIND_NAMES[kind];
+    }
+
+    /**
+     * Returns the index of the target or -1 if nothing refers to the address.
+     */
+    public int indexOf(long target) {
+        int lo = 0;
+        int hi = targetCount() - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            long midTarget = getTarget(mid);
+            if (midTarget < target) {
+                lo = mid + 1;
+            } else if (midTarget > target) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes references to the address, one per line: the source address and the kind.
+     */
+    public void writeRefs(ListingWriter writer, long target) throws IOException {
+        int t = indexOf(target);
+        if (t < 0) {
+            return;
+        }
+        StringBuilder line = new StringBuilder();
+        for (int r = getFirstRef(t); r < getFirstRef(t + 1); r++) {
+            line.setLength(0);
+            TextFormat.appendHex(line, getSource(r), 8);
+            line.append(' ').append(kindName(getKind(r)));
+            writer.write(line.toString());
+            writer.newLine();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * A binary listing read back against the decoded text it was written from.
+ */
+class BinaryListingTest {
+    private final static long BASE = 0x200000;
+
+    @TempDir
+    Path dir;
+
+    private static ElfFile elf(ByteBuffer code) {
+        ElfSectionInfo text = new ElfSectionInfo();
+        text.name = ".text";
+        text.sh_addr = BASE;
+        text.sh_offset = 0;
+        text.sh_size = code.limit();
+        ElfFile elf = new ElfFile();
+        elf.data = code;
+        elf.textHeader = text;
+        return elf;
+    }
+
+    private static ByteBuffer randomCode(Random random, int size) {
+        ByteBuffer code = ByteBuffer.allocate(size + 4).order(ByteOrder.LITTLE_ENDIAN);
+        while (code.position() < size) {
+            if (random.nextBoolean()) {
+                code.putInt(random.nextInt() | 0x3);
+            } else {
+                code.putShort((short) (random.nextInt() & ~0x3 | random.nextInt(3)));
+            }
+        }
+        return code.limit(code.position());
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        Random random = new Random(3);
+        ByteBuffer code = randomCode(random, 1 << 14);
+        ElfFile elf = elf(code);
+        SymbolIndex symtab = new SymbolIndex();
+        DecodedText text = new DecodedText(symtab, code.limit() / 2);
+        Disasm.disasmRange(code, elf.textHeader, 0, code.limit(), text);
+        for (int i = 0; i < text.size(); i += 1 + random.nextInt(200)) {
+            symtab.put(text.getAddress(i), "func_" + i);
+        }
+
+        Path path = dir.resolve("listing.bin");
+        BinaryListing.write(path, text, elf);
+        BinaryListing listing = BinaryListing.open(path);
+
+        assertEquals(text.size(), listing.size());
+        for (int i = 0; i < text.size(); i++) {
+            String message = "command " + i;
+            long address = text.getAddress(i);
+            Mnemonic mnemonic = text.getMnemonic(i);
+            assertEquals(address, listing.getAddress(i), message);
+            assertEquals(mnemonic.ordinal(), listing.getMnemonicId(i), message);
+            assertEquals(mnemonic.text, listing.getMnemonic(i), message);
+            assertEquals(text.getRd(i), listing.getRd(i), message);
+            assertEquals(text.getRs1(i), listing.getRs1(i), message);
+            assertEquals(text.getRs2(i), listing.getRs2(i), message);
+            assertEquals(text.getImm(i), listing.getImm(i), message);
+            long next = i + 1 < text.size() ? text.getAddress(i + 1) : BASE + code.limit();
+            assertEquals(next - address, listing.getLength(i), message);
+
+            String symbol = text.getSymbol(i);
+            if (symbol.isEmpty()) {
+                assertNull(listing.getLabel(i), message);
+            } else {
+                assertEquals(symbol, listing.getLabel(i), message);
+            }
+            if (mnemonic.format.hasTarget) {
+                assertEquals(text.getTarget(i), listing.getTarget(i), message);
+                assertEquals(text.getLabel(text.getTarget(i)), listing.getTargetLabel(i), message);
+            } else {
+                assertNull(listing.getTargetLabel(i), message);
+            }
+            assertEquals(i, listing.indexOf(address), message);
+        }
+        assertEquals(-1, listing.indexOf(BASE + 1));
+    }
+
+    @Test
+    void emptyText() throws IOException {
+        ElfFile elf = elf(ByteBuffer.allocate(0));
+        Path path = dir.resolve("empty.bin");
+        BinaryListing.write(path, new DecodedText(new SymbolIndex(), 0), elf);
+        BinaryListing listing = BinaryListing.open(path);
+        assertEquals(0, listing.size());
+        assertEquals(-1, listing.indexOf(BASE));
+    }
+}
@@ -0,0 +1,186 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Command starts found with the vector mask and with the scalar one against a serial walk over command lengths,
+ * and the queries answered from them.
+ */
+class CommandBoundariesTest {
+    private final static long BASE = 0x10074;
+    private final static int OFFSET = 0x40;
+
+    /**
+     * Returns a file with the section at OFFSET followed by bytes of 32-bit commands, so that a command
+     * running past the end of the section can be read.
+     */
+    private static ByteBuffer file(byte[] section) {
+        ByteBuffer file = ByteBuffer.allocate(OFFSET + section.length + 8);
+        file.put(OFFSET, section);
+        for (int i = OFFSET + section.length; i < file.limit(); i++) {
+            file.put(i, (byte) 0xff);
+        }
+        return file;
+    }
+
+    private static ElfSectionInfo section(int size) {
+        ElfSectionInfo section = new ElfSectionInfo();
+        section.sh_addr = BASE;
+        section.sh_offset = OFFSET;
+        section.sh_size = size;
+        return section;
+    }
+
+    /**
+     * Returns halfwords where commands start, decoding lengths one command after another.
+     */
+    private static boolean[] serialStarts(byte[] section) {
+        boolean[] starts = new boolean[(section.length + 1) / 2];
+        int pos = 0;
+        while (pos < section.length) {
+            starts[pos / 2] = true;
+            pos += (section[pos] & 0x3) == 3 ? 4 : 2;
+        }
+        return starts;
+    }
+
+    private static void check(byte[] bytes) {
+        ByteBuffer file = file(bytes);
+        ElfSectionInfo section = section(bytes.length);
+        boolean[] expected = serialStarts(bytes);
+        for (boolean vector : new boolean[]{false, true}) {
+            String message = (vector ? "vector" : "scalar") + " mask, " + bytes.length + " bytes";
+            CommandBoundaries boundaries = CommandBoundaries.scan(file, section, vector);
+            assertEquals((expected.length + 63) / 64, boundaries.wordCount(), message);
+            for (int w = 0; w < boundaries.wordCount(); w++) {
+                long bits = 0;
+                long longMask = 0;
+                for (int h = 64 * w; h < Math.min(64 * w + 64, expected.length); h++) {
+                    bits |= expected[h] ? 1L << (h & 63) : 0;
+                    longMask |= (bytes[2 * h] & 0x3) == 3 ? 1L << (h & 63) : 0;
+                }
+                assertEquals(bits, boundaries.getStarts(w), message + ", word " + w);
+                assertEquals(longMask, boundaries.getLongMask(w), message + ", word " + w);
+            }
+
+            // prefix counts over every address, odd ones included
+            int[] commands = new int[expected.length + 1];
+            int[] compressed = new int[expected.length + 1];
+            for (int h = 0; h < expected.length; h++) {
+                commands[h + 1] = commands[h] + (expected[h] ? 1 : 0);
+                compressed[h + 1] = compressed[h] + (expected[h] && (bytes[2 * h] & 0x3) != 3 ? 1 : 0);
+            }
+            assertEquals(commands[expected.length], boundaries.count(), message);
+            long end = BASE;
+            for (int h = 0; h < expected.length; h++) {
+                if (expected[h]) {
+                    end = BASE + 2L * h + ((bytes[2 * h] & 0x3) == 3 ? 4 : 2);
+                }
+            }
+            assertEquals(end, boundaries.end(), message);
+            for (long address = BASE - 2; address <= BASE + bytes.length + 4; address++) {
+                int h = (int) Math.min(Math.max(address - BASE + 1, 0) / 2, expected.length);
+                assertEquals(commands[h], boundaries.rank(address), message + ", rank at " + address);
+                long next = end;
+                for (int n = h; n < expected.length; n++) {
+                    if (expected[n]) {
+                        next = BASE + 2L * n;
+                        break;
+                    }
+                }
+                assertEquals(next, boundaries.nextStart(address), message + ", next start at " + address);
+                boolean start = address >= BASE && (address - BASE) % 2 == 0 && h < expected.length && expected[h];
+                assertEquals(start, boundaries.isStart(address), message + ", start at " + address);
+            }
+            Random random = new Random(bytes.length);
+            for (int i = 0; i < 200; i++) {
+                long from = BASE + random.nextInt(bytes.length + 4) - 2;
+                long to = from + random.nextInt(bytes.length + 4);
+                int first = (int) Math.min(Math.max(from - BASE + 1, 0) / 2, expected.length);
+                int last = (int) Math.min(Math.max(to - BASE + 1, 0) / 2, expected.length);
+                assertEquals(compressed[last] - compressed[first], boundaries.countCompressed(from, to),
+                        message + ", compressed in [" + from + ", " + to + ")");
+            }
+            for (int chunkSize : new int[]{2, 64, 130, 1000}) {
+                checkChunks(boundaries, section, chunkSize, message);
+            }
+        }
+    }
+
+    private static void checkChunks(CommandBoundaries boundaries, ElfSectionInfo section, int chunkSize,
+                                    String message) {
+        List<Integer> bounds = boundaries.chunkBounds(chunkSize);
+        long delta = section.sh_offset - section.sh_addr;
+        assertEquals(OFFSET, (int) bounds.get(0), message);
+        assertEquals(boundaries.end() + delta, (long) bounds.get(bounds.size() - 1), message);
+        for (int b = 1; b + 1 < bounds.size(); b++) {
+            assertTrue(boundaries.isStart(bounds.get(b) - delta), message + ", bound " + bounds.get(b));
+            assertTrue(bounds.get(b) - bounds.get(b - 1) >= chunkSize, message + ", chunk " + b);
+        }
+    }
+
+    private static byte[] randomSection(Random random, int size, int longPercent) {
+        byte[] bytes = new byte[size];
+        random.nextBytes(bytes);
+        for (int i = 0; i < size; i += 2) {
+            bytes[i] = (byte) (random.nextInt(100) < longPercent ? bytes[i] | 0x3 : bytes[i] & ~0x1);
+        }
+        return bytes;
+    }
+
+    @Test
+    void randomSections() {
+        Random random = new Random(7);
+        for (int size = 0; size <= 300; size++) {
+            check(randomSection(random, size, 50));
+        }
+        for (int i = 0; i < 50; i++) {
+            int size = 300 + random.nextInt(5000);
+            check(randomSection(random, size, random.nextInt(101)));
+        }
+    }
+
+    @Test
+    void oddHalfwordCount() {
+        Random random = new Random(1);
+        for (int halfwords : new int[]{1, 3, 63, 65, 127, 129, 1025}) {
+            check(randomSection(random, 2 * halfwords, 50));
+            check(randomSection(random, 2 * halfwords - 1, 50));
+        }
+    }
+
+    @Test
+    void commandAcrossWords() {
+        // compressed commands up to halfword 63, a 32-bit one over halfwords 63 and 64, then compressed again
+        byte[] bytes = new byte[2 * 200];
+        for (int h = 0; h < 200; h++) {
+            bytes[2 * h] = 0x01;
+        }
+        for (int h : new int[]{63, 127, 190}) {
+            bytes[2 * h] = 0x13;
+        }
+        check(bytes);
+        CommandBoundaries boundaries = CommandBoundaries.scan(file(bytes), section(bytes.length));
+        assertTrue(boundaries.isStart(BASE + 2 * 63));
+        assertTrue(!boundaries.isStart(BASE + 2 * 64));
+        assertTrue(boundaries.isStart(BASE + 2 * 65));
+        assertEquals(197, boundaries.count());
+    }
+
+    @Test
+    void commandPastSectionEnd() {
+        // the last command is 32-bit and starts at the last halfword
+        byte[] bytes = {0x01, 0x00, 0x13, 0x00};
+        check(bytes);
+        byte[] odd = {0x01, 0x00, 0x13};
+        check(odd);
+        CommandBoundaries boundaries = CommandBoundaries.scan(file(bytes), section(bytes.length));
+        assertEquals(BASE + 6, boundaries.end());
+        assertEquals(2, boundaries.count());
+    }
+}
@@ -0,0 +1,179 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Blocks and edges of hand-built functions: branches with their fallthrough, direct and indirect jumps,
+ * calls that don't end a block, targets outside the function and functions from 0x80000000 on.
+ */
+class ControlFlowGraphTest {
+    private final static int RA = 1;
+
+    /**
+     * Commands at consecutive addresses, 2 bytes for compressed ones and 4 for the others.
+     */
+    private static class Code {
+        final DecodedText text = new DecodedText(new SymbolIndex(), 16);
+        long address;
+
+        Code(long address) {
+            this.address = address;
+        }
+
+        Code add(Mnemonic mnemonic, int rd, int rs1, int imm) {
+            text.add(address, mnemonic, rd, rs1, 0, imm);
+            address += mnemonic.name().startsWith("C_") ? 2 : 4;
+            return this;
+        }
+
+        Code skip(long to) {
+            address = to;
+            return this;
+        }
+    }
+
+    /**
+     * Returns a symbol table of FUNC symbols in an otherwise empty file, a size of zero runs to the next function.
+     */
+    private static ElfSymtab symtab(long[] addresses, long[] sizes, String[] names) {
+        ByteBuffer file = ByteBuffer.allocate(16 * (addresses.length + 1) + 256).order(ByteOrder.LITTLE_ENDIAN);
+        int strtabOffset = 16 * (addresses.length + 1);
+        int nameOffset = 1;
+        // entry 0 is the null symbol
+        file.position(16);
+        for (int i = 0; i < addresses.length; i++) {
+            file.putInt(nameOffset);
+            file.putInt((int) addresses[i]);
+            file.putInt((int) sizes[i]);
+            file.put((byte) (0x10 | ElfSymtab.STT_FUNC));
+            file.put((byte) 0);
+            file.putShort((short) 1);
+            byte[] name = names[i].getBytes(StandardCharsets.UTF_8);
+            file.put(strtabOffset + nameOffset, name);
+            nameOffset += name.length + 1;
+        }
+        ElfSectionInfo header = new ElfSectionInfo();
+        header.sh_offset = 0;
+        header.sh_size = 16 * (addresses.length + 1);
+        header.sh_entsize = 16;
+        return new ElfSymtab(file, header, strtabOffset);
+    }
+
+    /**
+     * Returns the commands of every block of function {@code f} as "first-last" indexes in the text.
+     */
+    private static List<String> blocks(ControlFlowGraph graph, int f) {
+        List<String> blocks = new ArrayList<>();
+        for (int b = graph.getFirstBlock(f); b < graph.getFirstBlock(f + 1); b++) {
+            blocks.add(graph.getBlockFirst(b) + "-" + graph.getBlockLast(b));
+        }
+        return blocks;
+    }
+
+    /**
+     * Returns the edges of every block of function {@code f} as "from kind to", blocks numbered from the entry.
+     */
+    private static List<String> edges(ControlFlowGraph graph, int f) {
+        String[] kinds = {"fallthrough", "taken", "jump"};
+        int first = graph.getFirstBlock(f);
+        List<String> edges = new ArrayList<>();
+        for (int b = first; b < graph.getFirstBlock(f + 1); b++) {
+            for (int e = graph.getFirstEdge(b); e < graph.getFirstEdge(b + 1); e++) {
+                edges.add((b - first) + " " + kinds[graph.getEdgeKind(e)] + " " + (graph.getEdgeTo(e) - first));
+            }
+        }
+        return edges;
+    }
+
+    @Test
+    void branchesAndJumps() {
+        long base = 0x10000;
+        Code code = new Code(base)
+                .add(Mnemonic.ADDI, 10, 10, 1)
+                .add(Mnemonic.BEQ, 0, 10, 12)    // 4: to 16, falls through to 8
+                .add(Mnemonic.ADDI, 10, 10, 2)
+                .add(Mnemonic.JAL, 0, 0, 8)      // 12: to 20
+                .add(Mnemonic.ADDI, 10, 10, 3)
+                .add(Mnemonic.JALR, 0, RA, 0)    // 20: ret
+                .add(Mnemonic.ADDI, 10, 10, 4);  // 24: unreachable
+        ControlFlowGraph graph = ControlFlowGraph.build(code.text,
+                symtab(new long[]{base}, new long[]{28}, new String[]{"f"}));
+
+        assertEquals(1, graph.functionCount());
+        assertEquals(base, graph.getFunctionAddress(0));
+        assertEquals("f", graph.getFunctionName(0));
+        assertEquals(List.of("0-1", "2-3", "4-4", "5-5"), blocks(graph, 0));
+        assertEquals(List.of("0 taken 2", "0 fallthrough 1", "1 jump 3", "2 fallthrough 3"), edges(graph, 0));
+        assertEquals(4, graph.getBlockCount(0));
+        assertEquals(4, graph.getEdgeCount(0));
+        assertEquals(-1, graph.getBlockOf(6));
+        assertEquals(graph.getFirstBlock(0) + 1, graph.getBlockOf(3));
+    }
+
+    @Test
+    void callsAndIndirectJumps() {
+        long base = 0x10000;
+        Code code = new Code(base)
+                .add(Mnemonic.JAL, RA, 0, 0x100)   // 0: call outside the text
+                .add(Mnemonic.JALR, RA, 5, 0)      // 4: indirect call
+                .add(Mnemonic.C_BNEZ, 0, 8, 6)     // 8: to 14, falls through to 10
+                .add(Mnemonic.C_JR, 0, RA, 0)      // 10: ret
+                .add(Mnemonic.C_NOP, 0, 0, 0)      // 12: unreachable
+                .add(Mnemonic.JALR, 0, 6, 0)       // 14: indirect jump
+                .add(Mnemonic.BEQ, 0, 0, -18)      // 18: second function, branch back into the first one
+                .add(Mnemonic.C_J, 0, 0, -22)      // 22: jump into the first one
+                .add(Mnemonic.C_NOP, 0, 0, 0);     // 24: unreachable
+        ControlFlowGraph graph = ControlFlowGraph.build(code.text, symtab(
+                new long[]{base, base + 18}, new long[]{18, 0}, new String[]{"g", "h"}));
+
+        assertEquals(2, graph.functionCount());
+        assertEquals(List.of("0-2", "3-3", "5-5"), blocks(graph, 0));
+        assertEquals(List.of("0 taken 2", "0 fallthrough 1"), edges(graph, 0));
+        assertEquals(-1, graph.getBlockOf(4));
+
+        // edges leaving the function are dropped, the branch keeps its fallthrough
+        assertEquals(base + 18, graph.getFunctionAddress(1));
+        assertEquals(List.of("6-6", "7-7"), blocks(graph, 1));
+        assertEquals(List.of("0 fallthrough 1"), edges(graph, 1));
+        assertEquals(-1, graph.getBlockOf(8));
+        assertEquals(5, graph.blockCount());
+        assertEquals(3, graph.edgeCount());
+    }
+
+    @Test
+    void highAddresses() {
+        Code code = new Code(0x7ffffff8L)
+                .add(Mnemonic.ADDI, 10, 10, 1)
+                .add(Mnemonic.JALR, 0, RA, 0)
+                .add(Mnemonic.BEQ, 0, 10, 8)       // 0x80000000: to 0x80000008
+                .add(Mnemonic.ADDI, 10, 10, 2)
+                .add(Mnemonic.JALR, 0, RA, 0)
+                .skip(0xfffffff8L)
+                .add(Mnemonic.ADDI, 10, 10, 3)
+                .add(Mnemonic.C_BNEZ, 0, 10, -4)   // loops back to the entry
+                .add(Mnemonic.C_JR, 0, RA, 0);
+        // symbols out of address order, the ones from 0x80000000 on have to sort last
+        ControlFlowGraph graph = ControlFlowGraph.build(code.text, symtab(
+                new long[]{0xfffffff8L, 0x80000000L, 0x7ffffff8L}, new long[]{0, 12, 8},
+                new String[]{"top", "high", "low"}));
+
+        assertEquals(3, graph.functionCount());
+        assertEquals(List.of("low", "high", "top"),
+                List.of(graph.getFunctionName(0), graph.getFunctionName(1), graph.getFunctionName(2)));
+        assertEquals(0x80000000L, graph.getFunctionAddress(1));
+        assertEquals(0xfffffff8L, graph.getFunctionAddress(2));
+
+        assertEquals(List.of("0-1"), blocks(graph, 0));
+        assertEquals(List.of(), edges(graph, 0));
+        assertEquals(List.of("2-2", "3-3", "4-4"), blocks(graph, 1));
+        assertEquals(List.of("0 taken 2", "0 fallthrough 1", "1 fallthrough 2"), edges(graph, 1));
+        assertEquals(List.of("5-6", "7-7"), blocks(graph, 2));
+        assertEquals(List.of("0 taken 0", "0 fallthrough 1"), edges(graph, 2));
+    }
+}
@@ -0,0 +1,170 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Functions and ranges of random code against the same commands of the listing of the whole .text,
+ * on the first query, which reads the symbol table directly, and on later ones, which use the index.
+ */
+class DisasmQueryTest {
+    private final static long BASE = 0x200000;
+    private final static int FUNCTIONS = 40;
+
+    private final ElfFile elf;
+    private final DecodedText full;
+    // starts of functions f0, f1, ... and the end of the last one
+    private final long[] starts = new long[FUNCTIONS + 1];
+
+    DisasmQueryTest() {
+        Random random = new Random(7);
+        int size = 1 << 14;
+        ByteBuffer data = ByteBuffer.allocate(size + 4096).order(ByteOrder.LITTLE_ENDIAN);
+        while (data.position() < size) {
+            if (random.nextBoolean()) {
+                data.putInt(random.nextInt() | 0x3);
+            } else {
+                data.putShort((short) (random.nextInt() & ~0x3 | random.nextInt(3)));
+            }
+        }
+        ElfSectionInfo textHeader = new ElfSectionInfo();
+        textHeader.name = ".text";
+        textHeader.sh_addr = BASE;
+        textHeader.sh_offset = 0;
+        textHeader.sh_size = data.position();
+        DecodedText commands = Disasm.disasm(data, textHeader, new SymbolIndex());
+
+        // functions of random length, the last one runs to the end of .text
+        for (int f = 0; f < FUNCTIONS; f++) {
+            starts[f] = commands.getAddress(f * (commands.size() / FUNCTIONS) + random.nextInt(8));
+        }
+        starts[FUNCTIONS] = BASE + textHeader.sh_size;
+        List<String> names = new ArrayList<>();
+        List<long[]> symbols = new ArrayList<>();
+        for (int f = 0; f < FUNCTIONS; f++) {
+            names.add("f" + f);
+            // every third function has no size and runs to the next one
+            symbols.add(new long[]{starts[f], f % 3 == 0 ? 0 : starts[f + 1] - starts[f]});
+        }
+        // another name for f7, and a function inside f5 that is overlapped by it
+        names.add("alias");
+        symbols.add(new long[]{starts[7], 4});
+        names.add("inner");
+        symbols.add(new long[]{commands.getAddress(commands.indexOf(starts[5]) + 3), 8});
+
+        int symtabOffset = (int) textHeader.sh_size;
+        int strtabOffset = symtabOffset + 16 * (symbols.size() + 1);
+        int nameOffset = 1;
+        data.position(symtabOffset + 16);
+        for (int i = 0; i < symbols.size(); i++) {
+            data.putInt(nameOffset);
+            data.putInt((int) symbols.get(i)[0]);
+            data.putInt((int) symbols.get(i)[1]);
+            data.put((byte) (0x10 | ElfSymtab.STT_FUNC));
+            data.put((byte) 0);
+            data.putShort((short) 1);
+            byte[] name = names.get(i).getBytes(StandardCharsets.UTF_8);
+            data.put(strtabOffset + nameOffset, name);
+            nameOffset += name.length + 1;
+        }
+        ElfSectionInfo symtabHeader = new ElfSectionInfo();
+        symtabHeader.sh_offset = symtabOffset;
+        symtabHeader.sh_size = strtabOffset - symtabOffset;
+        symtabHeader.sh_entsize = 16;
+
+        elf = new ElfFile();
+        elf.data = data.clear();
+        elf.textHeader = textHeader;
+        elf.symtabHeader = symtabHeader;
+        elf.strtabOffset = strtabOffset;
+        elf.symtab = new ElfSymtab(data, symtabHeader, strtabOffset);
+        full = Disasm.disasm(data, textHeader, Utils.symtabToIndex(elf.symtab));
+    }
+
+    /**
+     * Returns the index of the first command of the full listing at the address or after it.
+     */
+    private int lowerBound(long address) {
+        int i = 0;
+        while (i < full.size() && full.getAddress(i) < address) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Checks that the slice has the commands of the full listing in [start, end). A LOC_ label is expected
+     * only on a command that a command of the slice jumps to.
+     */
+    private void assertSlice(long start, long end, DecodedText slice) {
+        int from = lowerBound(start);
+        int to = lowerBound(end);
+        assertEquals(to - from, slice.size());
+        for (int i = 0; i < slice.size(); i++) {
+            String message = "command " + (from + i);
+            long address = full.getAddress(from + i);
+            assertEquals(address, slice.getAddress(i), message);
+            assertEquals(full.getMnemonic(from + i), slice.getMnemonic(i), message);
+            assertArrayEquals(full.getArgs(from + i), slice.getArgs(i), message);
+            String symbol = full.getSymbol(from + i);
+            if (symbol.startsWith("LOC_")) {
+                boolean targeted = false;
+                for (int j = 0; j < slice.size(); j++) {
+                    targeted |= slice.getMnemonic(j).format.hasTarget && slice.getTarget(j) == address;
+                }
+                assertEquals(targeted ? symbol : "", slice.getSymbol(i), message);
+            } else {
+                assertEquals(symbol, slice.getSymbol(i), message);
+            }
+        }
+    }
+
+    @Test
+    void functionsMatchFullListing() {
+        for (int f = 0; f < FUNCTIONS; f++) {
+            DisasmQuery query = new DisasmQuery(elf);
+            assertSlice(starts[f], starts[f + 1], query.function("f" + f));
+            assertSlice(starts[f], starts[f + 1], query.function("f" + f));
+            assertEquals(starts[f], new DisasmQuery(elf).functionAddress("f" + f));
+        }
+        DisasmQuery warm = new DisasmQuery(elf);
+        warm.function("f0");
+        for (int f = 0; f < FUNCTIONS; f++) {
+            assertSlice(starts[f], starts[f + 1], warm.function("f" + f));
+        }
+    }
+
+    @Test
+    void otherNames() {
+        assertSlice(starts[7], starts[8], new DisasmQuery(elf).function("alias"));
+        assertNull(new DisasmQuery(elf).function("inner"));
+        assertNull(new DisasmQuery(elf).function("f"));
+        assertNull(new DisasmQuery(elf).function("f400"));
+        assertEquals(-1, new DisasmQuery(elf).functionAddress("missing"));
+        DisasmQuery warm = new DisasmQuery(elf);
+        warm.function("f0");
+        assertSlice(starts[7], starts[8], warm.function("alias"));
+        assertNull(warm.function("inner"));
+    }
+
+    @Test
+    void rangesMatchFullListing() {
+        Random random = new Random(11);
+        DisasmQuery warm = new DisasmQuery(elf);
+        long textEnd = starts[FUNCTIONS];
+        for (int k = 0; k < 50; k++) {
+            long start = BASE - 64 + random.nextInt((int) (textEnd - BASE) + 128);
+            long end = start + random.nextInt(2048);
+            assertSlice(start, end, new DisasmQuery(elf).range(start, end));
+            assertSlice(start, end, warm.range(start, end));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The table-driven decoder against {@link ReferenceDisasm}: every 16-bit encoding, and every
+ * opcode/func3/func7 combination of 32-bit commands with the remaining bits swept.
+ * Decoding in chunks on several threads, of one section and of several, against decoding on one.
+ */
+class DisasmTest {
+    // far enough from zero that no jump or branch target is negative
+    private final static long BASE = 0x200000;
+
+    private static DecodedText decode(ByteBuffer code) {
+        ElfSectionInfo section = new ElfSectionInfo();
+        section.sh_addr = BASE;
+        section.sh_size = code.limit();
+        DecodedText text = new DecodedText(new SymbolIndex(), code.limit() / 2);
+        Disasm.disasmRange(code, section, 0, code.limit(), text);
+        return text;
+    }
+
+    private static void assertSame(AsmCommand expected, DecodedText text, int i, int data) {
+        String message = "command " + Integer.toHexString(data);
+        assertEquals(expected.address, text.getAddress(i), message);
+        assertEquals(expected.name, text.getMnemonic(i).text, message);
+        assertArrayEquals(expected.args, text.getArgs(i), message);
+    }
+
+    @Test
+    void compressedCommands() {
+        ByteBuffer code = ByteBuffer.allocate(2 << 16).order(ByteOrder.LITTLE_ENDIAN);
+        for (int data = 0; data < 1 << 16; data++) {
+            if ((data & 0x3) != 3) {
+                code.putShort((short) data);
+            }
+        }
+        code.flip();
+        DecodedText text = decode(code);
+        int i = 0;
+        for (int data = 0; data < 1 << 16; data++) {
+            if ((data & 0x3) != 3) {
+                long address = BASE + 2L * i;
+                AsmCommand expected = ReferenceDisasm.parseCompressedCmd(data, address, new HashMap<>(), new HashSet<>());
+                assertSame(expected, text, i, data);
+                i++;
+            }
+        }
+        assertEquals(i, text.size());
+    }
+
+    @Test
+    void uncompressedCommands() {
+        Random random = new Random(1);
+        // registers and immediates: all zeros, all ones and random bits
+        int samples = 8;
+        ByteBuffer code = ByteBuffer.allocate(4 * 32 * 8 * 128 * samples).order(ByteOrder.LITTLE_ENDIAN);
+        int[] commands = new int[code.capacity() / 4];
+        int count = 0;
+        for (int opcode = 0; opcode < 32; opcode++) {
+            for (int func3 = 0; func3 < 8; func3++) {
+                for (int func7 = 0; func7 < 128; func7++) {
+                    for (int sample = 0; sample < samples; sample++) {
+                        int rest = switch (sample) {
+                            case 0 -> 0;
+                            case 1 -> -1;
+                            default -> random.nextInt();
+                        };
+                        // rd, rs1 and rs2 come from the sample, the fields selecting the command are swept
+                        int data = rest & 0x01ff8f80 | func7 << 25 | func3 << 12 | opcode << 2 | 0x3;
+                        commands[count++] = data;
+                        code.putInt(data);
+                    }
+                }
+            }
+        }
+        code.flip();
+        DecodedText text = decode(code);
+        assertEquals(count, text.size());
+        for (int i = 0; i < count; i++) {
+            AsmCommand expected = ReferenceDisasm.parseUncompressedCmd(commands[i], BASE + 4L * i,
+                    new HashMap<>(), new HashSet<>());
+            assertSame(expected, text, i, commands[i]);
+        }
+    }
+
+    /**
+     * Returns random commands, compressed and 32-bit mixed, with a 32-bit command over the given offsets.
+     */
+    private static ByteBuffer randomCode(Random random, int size, int... straddled) {
+        ByteBuffer code = ByteBuffer.allocate(size + 4).order(ByteOrder.LITTLE_ENDIAN);
+        while (code.position() < size) {
+            boolean straddles = false;
+            for (int offset : straddled) {
+                straddles |= code.position() == offset - 2;
+            }
+            if (straddles || random.nextBoolean()) {
+                code.putInt(random.nextInt() | 0x3);
+            } else {
+                code.putShort((short) (random.nextInt() & ~0x3 | random.nextInt(3)));
+            }
+        }
+        code.limit(size);
+        return code;
+    }
+
+    private static void assertSameText(DecodedText expected, DecodedText actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            String message = "command " + i;
+            assertEquals(expected.getAddress(i), actual.getAddress(i), message);
+            assertEquals(expected.getMnemonic(i), actual.getMnemonic(i), message);
+            assertEquals(expected.getRd(i), actual.getRd(i), message);
+            assertEquals(expected.getRs1(i), actual.getRs1(i), message);
+            assertEquals(expected.getRs2(i), actual.getRs2(i), message);
+            assertEquals(expected.getImm(i), actual.getImm(i), message);
+        }
+        assertEquals(Utils.disasmToString(expected), Utils.disasmToString(actual));
+    }
+
+    @Test
+    void chunkedDecodeMatchesSerial() {
+        // chunks are at least 64 KB, a 32-bit command covers the first nominal bound
+        int chunk = 1 << 16;
+        ByteBuffer code = randomCode(new Random(2), 5 * chunk + 123, chunk, 3 * chunk);
+        ElfSectionInfo section = new ElfSectionInfo();
+        section.sh_addr = BASE;
+        section.sh_size = code.limit();
+        List<Integer> bounds = CommandBoundaries.scan(code, section).chunkBounds(chunk);
+        assertTrue(bounds.size() > 2);
+        assertEquals(chunk + 2, (int) bounds.get(1));
+
+        SymbolIndex symbols = new SymbolIndex();
+        symbols.put(BASE + 2 * chunk, "middle");
+        DecodedText serial = Disasm.disasm(code, section, symbols, 1);
+        assertSameText(serial, Disasm.disasm(code, section, symbols, 4));
+        assertSameText(serial, Disasm.disasm(code, section, symbols));
+    }
+
+    @Test
+    void sectionsMatchSerial() {
+        // two sections larger than a chunk and a small one far after them, placed one after another in the file
+        Random random = new Random(3);
+        int[] sizes = {3 * (1 << 16) + 10, 100, (1 << 16) + 4000};
+        long[] addresses = {BASE, BASE + 0x80000, BASE + 0x90000};
+        ByteBuffer file = ByteBuffer.allocate(Arrays.stream(sizes).sum() + 4).order(ByteOrder.LITTLE_ENDIAN);
+        List<ElfSectionInfo> sections = new ArrayList<>();
+        for (int s = 0; s < sizes.length; s++) {
+            ElfSectionInfo section = new ElfSectionInfo();
+            section.sh_addr = addresses[s];
+            section.sh_offset = file.position();
+            section.sh_size = sizes[s];
+            sections.add(section);
+            file.put(randomCode(random, sizes[s], 1 << 16));
+        }
+        // a call from the small section into the first one, which gets a label shared across sections
+        int offset = (int) (addresses[0] + 0x10 - addresses[1]);
+        file.putInt((int) sections.get(1).sh_offset, (offset >>> 20 & 0x1) << 31 | (offset >>> 1 & 0x3ff) << 21
+                | (offset >>> 11 & 0x1) << 20 | (offset >>> 12 & 0xff) << 12 | 1 << 7 | 0x6f);
+        file.clear();
+
+        SymbolIndex symbols = new SymbolIndex();
+        List<DecodedText> parts = new ArrayList<>();
+        for (var section : sections) {
+            parts.add(Disasm.disasm(file, section, symbols));
+        }
+        DecodedText serial = DecodedText.concat(symbols, parts);
+        assertTrue(Utils.disasmToString(serial).contains("jal ra, LOC_"));
+        assertSameText(serial, Disasm.disasmSections(file, sections, symbols, 1));
+        assertSameText(serial, Disasm.disasmSections(file, sections, symbols, 4));
+    }
+}
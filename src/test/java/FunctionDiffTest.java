@@ -0,0 +1,159 @@
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Diffs of small elf files whose .text is moved, so that label operands and auipc/lui address pairs
+ * are encoded differently without the code changing.
+ */
+class FunctionDiffTest {
+    // not a multiple of 4 KB apart, the upper and lower parts of the pairs both change
+    private final static long BASE = 0x10074;
+    private final static long SHIFTED = 0x11a2c;
+    private final static long DATA = 0x40000;
+    private final static String[] NAMES = {"f0", "f1", "f2"};
+
+    private static int auipc(int rd, int hi) {
+        return hi << 12 | rd << 7 | 0x17;
+    }
+
+    private static int lui(int rd, int hi) {
+        return hi << 12 | rd << 7 | 0x37;
+    }
+
+    private static int addi(int rd, int rs1, int lo) {
+        return (lo & 0xfff) << 20 | rs1 << 15 | rd << 7 | 0x13;
+    }
+
+    private static int lw(int rd, int rs1, int lo) {
+        return (lo & 0xfff) << 20 | rs1 << 15 | 2 << 12 | rd << 7 | 0x03;
+    }
+
+    private static int jalr(int rd, int rs1, int lo) {
+        return (lo & 0xfff) << 20 | rs1 << 15 | rd << 7 | 0x67;
+    }
+
+    private static int jal(int rd, int offset) {
+        return (offset >>> 20 & 0x1) << 31 | (offset >>> 1 & 0x3ff) << 21 | (offset >>> 11 & 0x1) << 20
+                | (offset >>> 12 & 0xff) << 12 | rd << 7 | 0x6f;
+    }
+
+    private static int hi(long value) {
+        return (int) ((value + 0x800) >> 12) & 0xfffff;
+    }
+
+    private static int lo(long value) {
+        return (int) (value - ((value + 0x800) >> 12 << 12));
+    }
+
+    /**
+     * Returns three functions at the base address: f0 takes addresses of f1 and of data with auipc and lui pairs,
+     * calls f1 through auipc and jalr and f2 with jal, f1 adds {@code imm}, f2 loads from data.
+     */
+    private static int[][] functions(long base, int imm) {
+        long f1 = base + 4 * 10;
+        long f2 = f1 + 4 * 3;
+        long pc = base;
+        int[] f0 = {
+                auipc(10, hi(f1 + 4 - pc)), addi(10, 10, lo(f1 + 4 - pc)),
+                auipc(11, hi(DATA + 8 - (pc + 8))), lw(12, 11, lo(DATA + 8 - (pc + 8))),
+                lui(13, hi(f1 + 4)), addi(13, 13, lo(f1 + 4)),
+                auipc(1, hi(f1 - (pc + 24))), jalr(1, 1, lo(f1 - (pc + 24))),
+                jal(1, (int) (f2 - (pc + 32))),
+                jalr(0, 1, 0),
+        };
+        int[] f1Code = {addi(5, 5, 1), addi(6, 6, imm), jalr(0, 1, 0)};
+        int[] f2Code = {lui(14, hi(DATA)), lw(15, 14, lo(DATA)), jalr(0, 1, 0)};
+        return new int[][]{f0, f1Code, f2Code};
+    }
+
+    /**
+     * Returns an elf file with the functions in .text at the base address followed by the symbol table.
+     */
+    private static ElfFile elf(long base, int[][] functions) {
+        ByteBuffer data = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+        long[] starts = new long[functions.length];
+        for (int f = 0; f < functions.length; f++) {
+            starts[f] = base + data.position();
+            for (int command : functions[f]) {
+                data.putInt(command);
+            }
+        }
+        int textSize = data.position();
+        int symtabOffset = textSize;
+        int strtabOffset = symtabOffset + 16 * (functions.length + 1);
+        int nameOffset = 1;
+        data.position(symtabOffset + 16);
+        for (int f = 0; f < functions.length; f++) {
+            data.putInt(nameOffset);
+            data.putInt((int) starts[f]);
+            data.putInt(4 * functions[f].length);
+            data.put((byte) (0x10 | ElfSymtab.STT_FUNC));
+            data.put((byte) 0);
+            data.putShort((short) 1);
+            byte[] name = NAMES[f].getBytes(StandardCharsets.UTF_8);
+            data.put(strtabOffset + nameOffset, name);
+            nameOffset += name.length + 1;
+        }
+
+        ElfFile elf = new ElfFile();
+        elf.data = data.clear();
+        elf.textHeader = new ElfSectionInfo();
+        elf.textHeader.name = ".text";
+        elf.textHeader.sh_addr = base;
+        elf.textHeader.sh_offset = 0;
+        elf.textHeader.sh_size = textSize;
+        elf.symtabHeader = new ElfSectionInfo();
+        elf.symtabHeader.sh_offset = symtabOffset;
+        elf.symtabHeader.sh_size = strtabOffset - symtabOffset;
+        elf.symtabHeader.sh_entsize = 16;
+        elf.strtabOffset = strtabOffset;
+        elf.symtab = new ElfSymtab(data, elf.symtabHeader, strtabOffset);
+        return elf;
+    }
+
+    private static String write(FunctionDiff diff) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ListingWriter writer = new ListingWriter(Channels.newChannel(out));
+        diff.write(writer);
+        writer.flush();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    void movedTextIsUnchanged() throws IOException {
+        ElfFile before = elf(BASE, functions(BASE, 2));
+        ElfFile after = elf(SHIFTED, functions(SHIFTED, 2));
+        FunctionDiff diff = FunctionDiff.compare(before, after, 2);
+
+        assertEquals(List.of(), diff.changed);
+        assertEquals(List.of(), diff.added);
+        assertEquals(List.of(), diff.removed);
+        assertEquals(3, diff.unchanged);
+        assertEquals(3, diff.moved);
+        assertEquals("0 added, 0 removed, 0 changed, 3 unchanged (3 moved)\n", write(diff));
+    }
+
+    @Test
+    void oneChangedCommand() throws IOException {
+        ElfFile before = elf(BASE, functions(BASE, 2));
+        ElfFile after = elf(SHIFTED, functions(SHIFTED, 3));
+        FunctionDiff diff = FunctionDiff.compare(before, after, 2);
+
+        assertEquals(List.of("f1"), diff.changed);
+        assertEquals(2, diff.unchanged);
+        assertEquals(String.format("changed f1 %08x -> %08x\n", BASE + 40, SHIFTED + 40)
+                        + "  - addi t1, t1, 2\n"
+                        + "  + addi t1, t1, 3\n"
+                        + "0 added, 0 removed, 1 changed, 2 unchanged (2 moved)\n",
+                write(diff));
+    }
+}
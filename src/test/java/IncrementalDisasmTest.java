@@ -0,0 +1,165 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Listings written from a state file against listings of a fresh full run: after one function changed,
+ * after it added a LOC_ label in another function and after a symbol was renamed.
+ */
+class IncrementalDisasmTest {
+    private final static long BASE = 0x200000;
+    private final static int FUNCTIONS = 20;
+
+    @TempDir
+    Path dir;
+
+    private final ByteBuffer data;
+    private final ElfFile elf;
+    private final long[] starts = new long[FUNCTIONS + 1];
+    private final int strtabOffset;
+
+    IncrementalDisasmTest() {
+        Random random = new Random(5);
+        int size = 1 << 13;
+        data = ByteBuffer.allocate(size + 4096).order(ByteOrder.LITTLE_ENDIAN);
+        while (data.position() < size) {
+            if (random.nextBoolean()) {
+                data.putInt(random.nextInt() | 0x3);
+            } else {
+                data.putShort((short) (random.nextInt() & ~0x3 | random.nextInt(3)));
+            }
+        }
+        ElfSectionInfo textHeader = new ElfSectionInfo();
+        textHeader.name = ".text";
+        textHeader.sh_addr = BASE;
+        textHeader.sh_offset = 0;
+        textHeader.sh_size = data.position();
+        DecodedText commands = Disasm.disasm(data, textHeader, new SymbolIndex());
+        for (int f = 0; f < FUNCTIONS; f++) {
+            starts[f] = commands.getAddress(f * (commands.size() / FUNCTIONS) + random.nextInt(4));
+        }
+        starts[FUNCTIONS] = BASE + textHeader.sh_size;
+
+        int symtabOffset = (int) textHeader.sh_size;
+        strtabOffset = symtabOffset + 16 * (FUNCTIONS + 1);
+        int nameOffset = 1;
+        data.position(symtabOffset + 16);
+        for (int f = 0; f < FUNCTIONS; f++) {
+            data.putInt(nameOffset);
+            data.putInt((int) starts[f]);
+            data.putInt((int) (starts[f + 1] - starts[f]));
+            data.put((byte) (0x10 | ElfSymtab.STT_FUNC));
+            data.put((byte) 0);
+            data.putShort((short) 1);
+            byte[] name = String.format("f%02d", f).getBytes(StandardCharsets.UTF_8);
+            data.put(strtabOffset + nameOffset, name);
+            nameOffset += name.length + 1;
+        }
+        ElfSectionInfo symtabHeader = new ElfSectionInfo();
+        symtabHeader.sh_offset = symtabOffset;
+        symtabHeader.sh_size = strtabOffset - symtabOffset;
+        symtabHeader.sh_entsize = 16;
+
+        elf = new ElfFile();
+        elf.data = data.clear();
+        elf.textHeader = textHeader;
+        elf.symtabHeader = symtabHeader;
+        elf.strtabOffset = strtabOffset;
+        reloadSymtab();
+    }
+
+    private void reloadSymtab() {
+        elf.symtab = new ElfSymtab(data, elf.symtabHeader, strtabOffset);
+    }
+
+    private static String listing(ListingWriterAction action) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ListingWriter writer = new ListingWriter(Channels.newChannel(out));
+        action.write(writer);
+        writer.flush();
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private interface ListingWriterAction {
+        void write(ListingWriter writer) throws IOException;
+    }
+
+    private String fullListing() throws IOException {
+        DecodedText text = Disasm.disasm(data, elf.textHeader, Utils.symtabToIndex(elf.symtab));
+        return listing(writer -> writer.writeListing(text, elf.symtab));
+    }
+
+    /**
+     * Runs with the state file, checks the listing against a full run and returns the run.
+     */
+    private IncrementalDisasm run() throws IOException {
+        IncrementalDisasm incremental = new IncrementalDisasm();
+        incremental.disasm(elf, Utils.symtabToIndex(elf.symtab), dir.resolve("state"));
+        assertEquals(fullListing(), listing(writer -> incremental.writeListing(writer, elf.symtab)));
+        return incremental;
+    }
+
+    private static int jal(int rd, int offset) {
+        return (offset >>> 20 & 0x1) << 31 | (offset >>> 1 & 0x3ff) << 21 | (offset >>> 11 & 0x1) << 20
+                | (offset >>> 12 & 0xff) << 12 | rd << 7 | 0x6f;
+    }
+
+    @Test
+    void listingsMatchFullRuns() throws IOException {
+        IncrementalDisasm first = run();
+        assertEquals(FUNCTIONS, first.decodedFunctions);
+
+        IncrementalDisasm same = run();
+        assertEquals(FUNCTIONS, same.reusedFunctions);
+        assertEquals(FUNCTIONS, same.copiedFunctions);
+
+        // a 32-bit command of f05 becomes a jump to a command of f09 that has no label yet
+        DecodedText text = Disasm.disasm(data, elf.textHeader, Utils.symtabToIndex(elf.symtab));
+        int source = text.indexOf(starts[5]) + 1;
+        while (text.getAddress(source + 1) - text.getAddress(source) != 4) {
+            source++;
+        }
+        int target = text.indexOf(starts[9]) + 1;
+        while (!text.getSymbol(target).isEmpty()) {
+            target++;
+        }
+        long address = text.getAddress(source);
+        assertTrue(address < starts[6] && text.getAddress(target) < starts[10]);
+        data.putInt((int) (address - BASE), jal(0, (int) (text.getAddress(target) - address)));
+
+        IncrementalDisasm changed = run();
+        assertEquals(1, changed.decodedFunctions);
+        assertEquals(FUNCTIONS - 1, changed.reusedFunctions);
+        // f09 shows the new label, so its lines are rendered again
+        assertEquals(FUNCTIONS - 2, changed.copiedFunctions);
+
+        // renaming a function changes its own lines and lines of calls to it
+        data.put(strtabOffset + 1 + 4 * 9, (byte) 'g');
+        reloadSymtab();
+        IncrementalDisasm renamed = run();
+        assertEquals(FUNCTIONS, renamed.reusedFunctions);
+        assertTrue(renamed.copiedFunctions < FUNCTIONS);
+
+        assertEquals(FUNCTIONS, run().copiedFunctions);
+    }
+
+    @Test
+    void stateSavedWithoutListing() throws IOException {
+        IncrementalDisasm first = new IncrementalDisasm();
+        first.disasm(elf, Utils.symtabToIndex(elf.symtab), dir.resolve("state"));
+        first.saveState();
+        IncrementalDisasm second = run();
+        assertEquals(FUNCTIONS, second.copiedFunctions);
+    }
+}
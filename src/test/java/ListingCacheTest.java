@@ -0,0 +1,108 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hits, misses and least recently used eviction of {@link ListingCache}, also with entries removed
+ * by another process.
+ */
+class ListingCacheTest {
+    @TempDir
+    Path dir;
+
+    private Path listing(String name, int size) throws IOException {
+        Path file = dir.resolve(name);
+        Files.writeString(file, name.repeat(size / name.length() + 1).substring(0, size));
+        return file;
+    }
+
+    private static void touch(Path cacheDir, String key, long millis) throws IOException {
+        Files.setLastModifiedTime(cacheDir.resolve(key + ".txt"), FileTime.fromMillis(millis));
+    }
+
+    @Test
+    void hitAndMiss() throws IOException {
+        ListingCache cache = new ListingCache(dir.resolve("cache"), 1 << 20);
+        Path output = dir.resolve("out.txt");
+        assertFalse(cache.copyTo("a", output));
+        cache.store("a", listing("first", 100));
+        assertTrue(cache.copyTo("a", output));
+        assertEquals(Files.readString(dir.resolve("first")), Files.readString(output));
+        try (FileChannel channel = cache.open("a")) {
+            assertNotNull(channel);
+            assertEquals(100, channel.size());
+        }
+        assertNull(cache.open("b"));
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() throws IOException {
+        Path cacheDir = dir.resolve("cache");
+        ListingCache cache = new ListingCache(cacheDir, 250);
+        cache.store("a", listing("a", 100));
+        cache.store("b", listing("b", 100));
+        touch(cacheDir, "a", 2000);
+        touch(cacheDir, "b", 1000);
+        cache.store("c", listing("c", 100));
+        assertEquals(1, cache.getEvictions());
+        assertTrue(Files.exists(cacheDir.resolve("a.txt")));
+        assertFalse(Files.exists(cacheDir.resolve("b.txt")));
+        assertTrue(Files.exists(cacheDir.resolve("c.txt")));
+
+        // reopening the cache counts the entries left
+        ListingCache reopened = new ListingCache(cacheDir, 250);
+        touch(cacheDir, "a", 1000);
+        touch(cacheDir, "c", 2000);
+        reopened.store("d", listing("d", 100));
+        assertFalse(Files.exists(cacheDir.resolve("a.txt")));
+        assertTrue(Files.exists(cacheDir.resolve("c.txt")));
+    }
+
+    @Test
+    void entriesRemovedByAnotherProcess() throws IOException {
+        Path cacheDir = dir.resolve("cache");
+        ListingCache cache = new ListingCache(cacheDir, 250);
+        cache.store("a", listing("a", 100));
+        cache.store("b", listing("b", 100));
+        Files.delete(cacheDir.resolve("a.txt"));
+        assertFalse(cache.copyTo("a", dir.resolve("out.txt")));
+        // the estimate still counts a, eviction skips it and removes b instead
+        touch(cacheDir, "b", 1000);
+        cache.store("c", listing("c", 100));
+        assertFalse(Files.exists(cacheDir.resolve("b.txt")));
+        assertTrue(Files.exists(cacheDir.resolve("c.txt")));
+    }
+
+    @Test
+    void statsAreAccumulated() throws IOException {
+        Path cacheDir = dir.resolve("cache");
+        for (int run = 0; run < 2; run++) {
+            ListingCache cache = new ListingCache(cacheDir, 1 << 20);
+            if (!cache.copyTo("a", dir.resolve("out.txt"))) {
+                cache.store("a", listing("a", 10));
+            }
+            cache.saveStats();
+        }
+        Properties stats = new Properties();
+        try (var in = Files.newInputStream(cacheDir.resolve("stats.properties"))) {
+            stats.load(in);
+        }
+        assertEquals("1", stats.getProperty("hits"));
+        assertEquals("1", stats.getProperty("misses"));
+        assertEquals("10", stats.getProperty("bytes"));
+    }
+}
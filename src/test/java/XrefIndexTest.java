@@ -0,0 +1,76 @@
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Cross references of jumps on both sides of 0x80000000, where signed and unsigned order of targets differ.
+ */
+class XrefIndexTest {
+    private final static long BASE = 0x7ffff000L;
+
+    private static int jal(int rd, int offset) {
+        return (offset >>> 20 & 0x1) << 31 | (offset >>> 1 & 0x3ff) << 21 | (offset >>> 11 & 0x1) << 20
+                | (offset >>> 12 & 0xff) << 12 | rd << 7 | 0x6f;
+    }
+
+    private static XrefIndex build() {
+        int[] commands = {
+                jal(1, 0x2000),       // 0x7ffff000 -> 0x80001000
+                jal(0, 0x10),         // 0x7ffff004 -> 0x7ffff014
+                jal(1, 0x2000 - 8),   // 0x7ffff008 -> 0x80001000
+                jal(0, 0x8),          // 0x7ffff00c -> 0x7ffff014
+        };
+        ByteBuffer code = ByteBuffer.allocate(4 * commands.length).order(ByteOrder.LITTLE_ENDIAN);
+        for (int command : commands) {
+            code.putInt(command);
+        }
+        code.flip();
+        ElfSectionInfo section = new ElfSectionInfo();
+        section.sh_addr = BASE;
+        section.sh_size = code.limit();
+        DecodedText text = new DecodedText(new SymbolIndex(), commands.length);
+        Disasm.disasmRange(code, section, 0, code.limit(), text);
+        return XrefIndex.build(text, "key");
+    }
+
+    private static void assertRefs(XrefIndex index) {
+        assertEquals(2, index.targetCount());
+        assertEquals(0x7ffff014L, index.getTarget(0));
+        assertEquals(0x80001000L, index.getTarget(1));
+
+        int low = index.indexOf(0x7ffff014L);
+        assertEquals(0, low);
+        assertEquals(0x7ffff004L, index.getSource(index.getFirstRef(low)));
+        assertEquals(0x7ffff00cL, index.getSource(index.getFirstRef(low) + 1));
+        assertEquals(XrefIndex.JUMP, index.getKind(index.getFirstRef(low)));
+
+        int high = index.indexOf(0x80001000L);
+        assertEquals(1, high);
+        assertEquals(2, index.getFirstRef(high + 1) - index.getFirstRef(high));
+        assertEquals(0x7ffff000L, index.getSource(index.getFirstRef(high)));
+        assertEquals(0x7ffff008L, index.getSource(index.getFirstRef(high) + 1));
+        assertEquals(XrefIndex.CALL, index.getKind(index.getFirstRef(high)));
+
+        assertEquals(-1, index.indexOf(0x80000000L));
+    }
+
+    @Test
+    void targetsAboveSignBit() {
+        assertRefs(build());
+    }
+
+    @Test
+    void writtenIndex(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("xrefs.idx");
+        build().write(file);
+        XrefIndex index = XrefIndex.open(file);
+        assertEquals("key", index.getKey());
+        assertRefs(index);
+    }
+}